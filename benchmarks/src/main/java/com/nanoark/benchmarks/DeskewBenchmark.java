@@ -0,0 +1,82 @@
+package com.nanoark.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.tess4j.util.ImageHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link ImageHelper#estimateSkew} and {@link ImageHelper#deskew} on pages skewed by a
+ * known angle, against rotating the page back with the Graphics2D {@link ImageHelper#rotateImage}. The error of the
+ * estimated angle is printed when each trial ends.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar Deskew
+ * </pre>
+ *
+ * @author Vino Sugunan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DeskewBenchmark {
+   /** Skew of the text lines in degrees. */
+   @Param({"-3.2", "-1.0", "0.5", "2.5"})
+   public double         skew;
+
+   private final int     width  = 2480;
+   private final int     height = 3508;
+   /** Skewed page, an A4 page at 300 dpi. */
+   private BufferedImage page;
+   private byte[]        skewed;
+   private byte[]        straightened;
+
+   @Setup
+   public void setup() {
+      BufferedImage level = ImageHelperKernelsBenchmark.textPage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+      page = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+      skewed = ((DataBufferByte) page.getRaster().getDataBuffer()).getData();
+      ImageHelper.rotate(((DataBufferByte) level.getRaster().getDataBuffer()).getData(), skewed, width, height, -skew,
+         (byte) 0xff);
+      straightened = new byte[width * height];
+   }
+
+   @TearDown
+   public void tearDown() {
+      double angle = ImageHelper.estimateSkew(skewed, width, height, 5, 0.5, 4);
+      System.out.printf("%nSkew %.2f estimated as %.3f, error %.3f degrees%n", skew, angle, Math.abs(angle - skew));
+   }
+
+   @Benchmark
+   public double estimateSkew() {
+      return ImageHelper.estimateSkew(skewed, width, height, 5, 0.5, 4);
+   }
+
+   @Benchmark
+   public byte[] deskew() {
+      ImageHelper.deskew(skewed, straightened, width, height);
+      return straightened;
+   }
+
+   @Benchmark
+   public BufferedImage graphicsRotate() {
+      return ImageHelper.rotateImage(page, -skew);
+   }
+}
@@ -0,0 +1,76 @@
+package com.nanoark.benchmarks;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nanoark.utilities.FileActions;
+
+/**
+ * Compares reading an image's dimensions from its header through {@link FileActions#getDimensions(String)} with
+ * decoding the whole image, as ImageDAO.insert did before, for PNG, JPEG and TIFF pages.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar DimensionProbe -prof gc
+ * </pre>
+ *
+ * @author Vino Sugunan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DimensionProbeBenchmark {
+   /** ImageIO format name of the page. */
+   @Param({"png", "jpeg", "tiff"})
+   public String  format;
+
+   /** Scanned page, an A4 page at 300 dpi. */
+   private File   page;
+   private String location;
+
+   @Setup
+   public void setup() throws IOException {
+      page = File.createTempFile("probe", "." + format);
+      BufferedImage image = ImageHelperKernelsBenchmark.textPage(2480, 3508, BufferedImage.TYPE_BYTE_GRAY);
+      if( !ImageIO.write(image, format, page)) {
+         throw new IllegalStateException("No ImageIO writer for " + format);
+      }
+      location = page.toURI().toString();
+   }
+
+   @TearDown
+   public void tearDown() {
+      page.delete();
+   }
+
+   @Benchmark
+   public Dimension fullDecode() throws IOException {
+      BufferedImage image = ImageIO.read(page);
+      return new Dimension(image.getWidth(), image.getHeight());
+   }
+
+   @Benchmark
+   public Dimension headerProbe() throws IOException {
+      return FileActions.getDimensions(location);
+   }
+}
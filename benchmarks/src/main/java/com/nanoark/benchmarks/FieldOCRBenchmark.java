@@ -0,0 +1,107 @@
+package com.nanoark.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nanoark.utilities.OCRCancel;
+import com.nanoark.utilities.OCRField;
+import com.nanoark.utilities.TesseractJava;
+
+/**
+ * Measures the wall clock time to OCR the fields of one image through {@link TesseractJava#ocrFields}, by number of
+ * fields and number of pooled engines, which bounds the number of cores recognising fields at once.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar FieldOCR
+ * </pre>
+ *
+ * Run it from the directory holding tessdata, since engines are initialized from the working directory. Each
+ * combination runs in its own fork so that nanoweather.ocr.engines is read afresh, and the OCR cache is disabled so
+ * that every iteration runs Tesseract.
+ *
+ * @author Vino Sugunan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class FieldOCRBenchmark {
+   /** Fields recognised per image. */
+   @Param({"1", "10", "50"})
+   public int     fields;
+   /** Engines the fields are shared between. */
+   @Param({"1", "2", "4", "8"})
+   public int     engines;
+
+   /** Scanned page the fields are read from, an A4 page at 300 dpi. */
+   private File   page;
+   private String location;
+
+   @Setup
+   public void setup() throws IOException {
+      // Read when TesseractPool and OCRCache are first loaded, which is not until the first benchmark call.
+      System.setProperty("nanoweather.ocr.engines", Integer.toString(engines));
+      System.setProperty("nanoweather.ocrCache.disabled", "true");
+      page = File.createTempFile("fieldocr", ".png");
+      ImageIO.write(ImageHelperKernelsBenchmark.textPage(2480, 3508, BufferedImage.TYPE_BYTE_GRAY), "png", page);
+      location = page.toURI().toString();
+   }
+
+   @TearDown
+   public void tearDown() {
+      page.delete();
+   }
+
+   @Benchmark
+   public List<OCRField> ocrFields() throws IOException {
+      List<OCRField> list = layout(fields);
+      OCRCancel run = OCRCancel.start(location);
+      try {
+         if( !TesseractJava.ocrFields(location, list, run)) {
+            throw new IllegalStateException("Could not OCR " + location);
+         }
+      } finally {
+         run.finish();
+      }
+      return list;
+   }
+
+   /**
+    * Lays fields out over the page in five columns, each a single line of text high.
+    *
+    * @param count number of fields.
+    * @return new fields, since their results are filled in by each run.
+    */
+   static List<OCRField> layout(int count) {
+      int size = 3508 / 80;
+      int width = 2480 / 5 - size;
+      List<OCRField> list = new ArrayList<OCRField>(count);
+      for (int i = 0; i < count; i++ ) {
+         int x = size + (i % 5) * (width + size / 5);
+         int y = size + (i / 5) * 2 * size;
+         list.add(new OCRField("field" + i, x, y, width, 2 * size));
+      }
+      return list;
+   }
+}
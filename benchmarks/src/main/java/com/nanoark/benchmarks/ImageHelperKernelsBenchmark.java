@@ -0,0 +1,146 @@
+package com.nanoark.benchmarks;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.tess4j.util.ImageHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the primitive array kernels in {@link ImageHelper} with the Graphics2D and LookupOp conversions they
+ * replace, on synthetic text pages of 1, 4, 8 and 16 megapixels.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar ImageHelperKernels -prof gc
+ * </pre>
+ *
+ * The kernels write into buffers allocated once per trial, so their allocation rate should be close to zero while
+ * the Graphics2D versions allocate a new image on every call.
+ *
+ * @author Vino Sugunan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ImageHelperKernelsBenchmark {
+   /** Size of the page in megapixels. */
+   @Param({"1", "4", "8", "16"})
+   public int                  megapixels;
+
+   private int                 width;
+   private int                 height;
+   /** Page as packed RGB. */
+   private BufferedImage       page;
+   /** Page as 8 bit gray. */
+   private BufferedImage       grayPage;
+   private int[]               rgb;
+   private byte[]              grayPixels;
+   private byte[]              gray;
+   private byte[]              binary;
+   /** Grayscale kernel applied by row band. */
+   private ImageHelper.Kernel  grayscale;
+
+   @Setup
+   public void setup() {
+      // A letter shaped page, 3 wide by 4 high.
+      height = (int) Math.sqrt(megapixels * 1000000.0 * 4 / 3);
+      width = megapixels * 1000000 / height;
+      page = textPage(width, height, BufferedImage.TYPE_INT_RGB);
+      grayPage = ImageHelper.convertImageToGrayscale(page);
+      rgb = ((DataBufferInt) page.getRaster().getDataBuffer()).getData();
+      grayPixels = ((DataBufferByte) grayPage.getRaster().getDataBuffer()).getData();
+      gray = new byte[width * height];
+      binary = new byte[width * height];
+      grayscale = new ImageHelper.Kernel() {
+         @Override
+         public void apply(int offset, int length) {
+            ImageHelper.convertToGrayscale(rgb, gray, offset, length);
+         }
+      };
+   }
+
+   @Benchmark
+   public BufferedImage graphicsGrayscale() {
+      return ImageHelper.convertImageToGrayscale(page);
+   }
+
+   @Benchmark
+   public byte[] kernelGrayscale() {
+      ImageHelper.convertToGrayscale(rgb, gray, 0, rgb.length);
+      return gray;
+   }
+
+   @Benchmark
+   public byte[] parallelGrayscale() {
+      ImageHelper.parallel(width, height, grayscale);
+      return gray;
+   }
+
+   @Benchmark
+   public BufferedImage graphicsBinarize() {
+      return ImageHelper.convertImageToBinary(page);
+   }
+
+   @Benchmark
+   public byte[] kernelBinarize() {
+      ImageHelper.convertToGrayscale(rgb, gray, 0, rgb.length);
+      ImageHelper.binarize(gray, binary, 0, gray.length, ImageHelper.otsuThreshold(gray, 0, gray.length));
+      return binary;
+   }
+
+   @Benchmark
+   public BufferedImage graphicsInvert() {
+      return ImageHelper.invertImageColor(grayPage);
+   }
+
+   @Benchmark
+   public byte[] kernelInvert() {
+      ImageHelper.invert(grayPixels, binary, 0, grayPixels.length);
+      return binary;
+   }
+
+   /**
+    * Draws lines of black text on a white page, about as dense as a typed form.
+    *
+    * @param width page width in pixels.
+    * @param height page height in pixels.
+    * @param type BufferedImage type of the page.
+    * @return the page.
+    */
+   static BufferedImage textPage(int width, int height, int type) {
+      BufferedImage page = new BufferedImage(width, height, type);
+      Graphics2D g = page.createGraphics();
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, width, height);
+      g.setColor(Color.BLACK);
+      int size = Math.max(12, height / 80);
+      g.setFont(new Font(Font.SERIF, Font.PLAIN, size));
+      String line = "The quick brown fox jumps over the lazy dog 0123456789 ";
+      for (int y = 2 * size; y < height - size; y += 2 * size) {
+         for (int x = size; x < width - size; x += g.getFontMetrics().stringWidth(line)) {
+            g.drawString(line, x, y);
+         }
+      }
+      g.dispose();
+      return page;
+   }
+}
@@ -0,0 +1,149 @@
+package com.nanoark.benchmarks;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nanoark.utilities.FileActions;
+import com.nanoark.utilities.OCRField;
+
+/**
+ * Compares cropping fields out of a fully decoded page with decoding only each field's region, as
+ * {@link FileActions#getSubImage(String, String, int, int, int, int)} now does, for 1, 10 and 50 fields of a page.
+ * Tiled TIFF is the case region decoding is for, PNG and JPEG are decoded from the top down to the region's last row
+ * either way.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar RegionDecode -prof gc
+ * </pre>
+ *
+ * The gc profiler reports the bytes allocated per page, which is where region decoding saves most.
+ *
+ * @author Vino Sugunan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RegionDecodeBenchmark {
+   /** Fields cropped from the page. */
+   @Param({"1", "10", "50"})
+   public int              fields;
+   /** ImageIO format name of the page, TIFF pages are written in LZW compressed 256 pixel tiles. */
+   @Param({"tiff", "png", "jpeg"})
+   public String           format;
+
+   /** Scanned page, an A4 page at 300 dpi. */
+   private File            page;
+   private String          location;
+   private List<Rectangle> regions;
+
+   @Setup
+   public void setup() throws IOException {
+      page = File.createTempFile("region", "." + format);
+      write(ImageHelperKernelsBenchmark.textPage(2480, 3508, BufferedImage.TYPE_BYTE_GRAY), format, page);
+      location = page.toURI().toString();
+      regions = new ArrayList<Rectangle>(fields);
+      for (OCRField field : FieldOCRBenchmark.layout(fields)) {
+         regions.add(new Rectangle(field.x, field.y, field.width, field.height));
+      }
+   }
+
+   @TearDown
+   public void tearDown() {
+      page.delete();
+   }
+
+   @Benchmark
+   public List<BufferedImage> fullDecode() throws IOException {
+      BufferedImage image = ImageIO.read(page);
+      List<BufferedImage> crops = new ArrayList<BufferedImage>(regions.size());
+      for (Rectangle region : regions) {
+         // Copied, as each field was written out and prepped separately.
+         BufferedImage crop = image.getSubimage(region.x, region.y, region.width, region.height);
+         crops.add(new BufferedImage(crop.getColorModel(), crop.copyData(null), false, null));
+      }
+      return crops;
+   }
+
+   @Benchmark
+   public List<BufferedImage> regionDecode() throws IOException {
+      List<BufferedImage> crops = new ArrayList<BufferedImage>(regions.size());
+      for (Rectangle region : regions) {
+         ImageInputStream iis = FileActions.openImageStream(location);
+         ImageReader reader = null;
+         try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            reader = readers.next();
+            reader.setInput(iis, true, true);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(region);
+            crops.add(reader.read(0, param));
+         } finally {
+            if(reader != null) {
+               reader.dispose();
+            }
+            iis.close();
+         }
+      }
+      return crops;
+   }
+
+   /**
+    * Writes a page, tiling TIFF pages so that a region decode only reads the tiles it covers.
+    *
+    * @param image page to write.
+    * @param format ImageIO format name.
+    * @param file file to write to.
+    * @throws IOException
+    */
+   private static void write(BufferedImage image, String format, File file) throws IOException {
+      if( !"tiff".equals(format)) {
+         ImageIO.write(image, format, file);
+         return;
+      }
+      ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setTiling(256, 256, 0, 0);
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionType("LZW");
+      ImageOutputStream out = ImageIO.createImageOutputStream(file);
+      try {
+         writer.setOutput(out);
+         writer.write(null, new IIOImage(image, null, null), param);
+      } finally {
+         writer.dispose();
+         out.close();
+      }
+   }
+}
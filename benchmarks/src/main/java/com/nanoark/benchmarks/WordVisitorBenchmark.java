@@ -0,0 +1,76 @@
+package com.nanoark.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.tess4j.ITessAPI.TessPageIteratorLevel;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.Word;
+import net.sourceforge.tess4j.Words;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares collecting the words or symbols of a dense page as a list of {@link Word} through
+ * {@link Tesseract#getWords} with streaming them into a reused {@link Words} through {@link Tesseract#visitWords}.
+ * Recognition dominates the time, so run it with the gc profiler and compare the bytes allocated per page.
+ *
+ * <pre>
+ * java -Dnanoweather.benchmark.datapath=. -jar benchmarks/target/benchmarks.jar WordVisitor -prof gc
+ * </pre>
+ *
+ * nanoweather.benchmark.datapath is the directory holding tessdata, the working directory by default.
+ *
+ * @author Vino Sugunan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class WordVisitorBenchmark {
+   /** Iterator level the elements are read at. */
+   @Param({"word", "symbol"})
+   public String         level;
+
+   private Tesseract     tesseract;
+   /** Dense text page, an A4 page at 150 dpi. */
+   private BufferedImage page;
+   private int           pageIteratorLevel;
+   private Words         words;
+
+   @Setup
+   public void setup() {
+      tesseract = new Tesseract();
+      tesseract.setDatapath(System.getProperty("nanoweather.benchmark.datapath", "."));
+      tesseract.setLanguage("ENG");
+      page = ImageHelperKernelsBenchmark.textPage(1240, 1754, BufferedImage.TYPE_BYTE_GRAY);
+      pageIteratorLevel = level.equals("word") ? TessPageIteratorLevel.RIL_WORD : TessPageIteratorLevel.RIL_SYMBOL;
+      words = new Words();
+   }
+
+   @Benchmark
+   public List<Word> getWords() {
+      return tesseract.getWords(page, pageIteratorLevel);
+   }
+
+   @Benchmark
+   public Words visitWords() throws TesseractException {
+      words.clear();
+      tesseract.visitWords(page, pageIteratorLevel, words);
+      return words;
+   }
+}
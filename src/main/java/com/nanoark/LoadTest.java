@@ -0,0 +1,126 @@
+package com.nanoark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives a fixed number of concurrent clients against one endpoint and reports throughput, latency percentiles and the
+ * concurrency the server actually sustained, to compare a servlet container or a fixed request pool against
+ * {@link NanoWeatherServer} on virtual threads:
+ *
+ * <pre>
+ * java -cp NanoWeather.jar com.nanoark.LoadTest http://localhost:8080/rest/NanoWeather/getImage/a 1000 20000
+ * </pre>
+ *
+ * The arguments are the URL, the number of concurrent clients, default 100, and the number of requests, default 100
+ * per client. Sustained concurrency is total request time over elapsed time, so it falls short of the number of
+ * clients once requests queue for server threads. Pick an endpoint which blocks on Mongo or a remote image rather than
+ * one which runs OCR, since OCR is bounded by the engine pool in either mode.
+ *
+ * @author Vino Sugunan
+ */
+public class LoadTest {
+
+   public static void main(String[] args) throws InterruptedException {
+      if(args.length == 0) {
+         System.err.println("Usage: LoadTest url [clients] [requests]");
+         System.exit(1);
+      }
+      final URL url;
+      try {
+         url = new URL(args[0]);
+      } catch (IOException e) {
+         throw new IllegalArgumentException("Not a URL: " + args[0], e);
+      }
+      int clients = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+      final int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100 * clients;
+      if(clients < 1 || requests < 1) {
+         throw new IllegalArgumentException("Clients and requests must be positive");
+      }
+      final long[] nanos = new long[requests];
+      final AtomicInteger next = new AtomicInteger();
+      final AtomicInteger errors = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(clients);
+      System.setProperty("http.maxConnections", String.valueOf(clients));
+      ExecutorService pool = Executors.newFixedThreadPool(clients);
+      long start = System.nanoTime();
+      for (int i = 0; i < clients; i++ ) {
+         pool.execute(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  int request;
+                  while ((request = next.getAndIncrement()) < requests) {
+                     long begin = System.nanoTime();
+                     if( !get(url)) {
+                        errors.incrementAndGet();
+                     }
+                     nanos[request] = System.nanoTime() - begin;
+                  }
+               } finally {
+                  done.countDown();
+               }
+            }
+         });
+      }
+      done.await();
+      long elapsed = System.nanoTime() - start;
+      pool.shutdown();
+      long total = 0;
+      for (long n : nanos) {
+         total += n;
+      }
+      Arrays.sort(nanos);
+      System.out.println(requests + " requests from " + clients + " clients in " + elapsed / 1000000 + "ms, "
+         + errors.get() + " errors");
+      System.out.println("throughput: " + Math.round(requests * 1e9 / elapsed) + " requests/s");
+      System.out.println("sustained concurrency: " + Math.round((double) total / elapsed));
+      System.out.println("latency ms: p50=" + percentile(nanos, 50) + " p95=" + percentile(nanos, 95) + " p99="
+         + percentile(nanos, 99) + " max=" + nanos[nanos.length - 1] / 1000000);
+   }
+
+   /**
+    * Requests a URL and reads the whole response.
+    *
+    * @param url URL to request.
+    * @return true if the server answered with a 2xx status.
+    */
+   private static boolean get(URL url) {
+      HttpURLConnection connection = null;
+      try {
+         connection = (HttpURLConnection) url.openConnection();
+         int status = connection.getResponseCode();
+         InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+         if(in != null) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+               // Drained so that the connection is kept alive for the next request.
+            }
+            in.close();
+         }
+         return status >= 200 && status < 300;
+      } catch (IOException e) {
+         if(connection != null) {
+            connection.disconnect();
+         }
+         return false;
+      }
+   }
+
+   /**
+    * @param sorted latencies in nanoseconds, in ascending order.
+    * @param percent percentile to report.
+    * @return the latency in milliseconds at the percentile.
+    */
+   private static long percentile(long[] sorted, int percent) {
+      int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+      return sorted[Math.max(0, index)] / 1000000;
+   }
+}
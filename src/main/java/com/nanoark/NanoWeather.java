@@ -1,18 +1,34 @@
 package com.nanoark;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.logging.Logger;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 
+import com.mongodb.DBObject;
 import com.nanoark.dao.DefaultsDAO;
 import com.nanoark.dao.ImageDAO;
 import com.nanoark.dao.ImageFieldDAO;
+import com.nanoark.dao.IngestJobDAO;
+import com.nanoark.dao.OCRJobDAO;
+import com.nanoark.dao.OCRWorkerDAO;
 import com.nanoark.dao.TemplateDAO;
 import com.nanoark.dao.TemplateFieldDAO;
+import com.nanoark.utilities.BulkIngest;
+import com.nanoark.utilities.Escalation;
+import com.nanoark.utilities.ImageIngest;
 import com.nanoark.utilities.Log;
+import com.nanoark.utilities.OCRCache;
+import com.nanoark.utilities.OCRCancel;
+import com.nanoark.utilities.OCRLanes;
+import com.nanoark.utilities.OCRWorker;
+import com.nanoark.utilities.Preprocess;
 
 /**
  * HTML interface for the NanoWeather plug-in software.
@@ -41,6 +57,83 @@ public class NanoWeather {
       return "Added " + image + " from " + location;
    }
 
+   /**
+    * Adds an image to NanoWeather without waiting for it to be read. The image is saved as pending and its
+    * dimensions are read in the background, after which its status becomes ready or failed.
+    *
+    * @param image specifies an identifier for this image.
+    * @param location specify the exact file location of this image.
+    * @param callback optional URL requested once the image has been read, with image and status appended. It must
+    *           be at an origin listed by nanoweather.ingest.callbacks.
+    * @return A brief string describing the image which was queued, or why the callback was refused.
+    */
+   @GET
+   @Path("/addImageAsync/{image}/{location: .*}")
+   public static String addImageAsync(@PathParam("image") String image, @PathParam("location") String location,
+      @QueryParam("callback") String callback) {
+      if(callback != null && !callback.isEmpty() && !ImageIngest.isAllowed(callback)) {
+         return "Callback not allowed: " + callback;
+      }
+      log.info("Adding pending image: " + image);
+      ImageDAO.insertPending(image, location, callback);
+      ImageIngest.submit(image, callback);
+      return "Queued " + image + " from " + location;
+   }
+
+   /**
+    * Adds every image listed by a directory or manifest to NanoWeather in the background. Running a job again with
+    * the same identifier resumes it, skipping images which were already added.
+    *
+    * @param job specifies an identifier for this ingest job.
+    * @param source local directory of images, or path or URL of a CSV (image,location) or JSON manifest.
+    * @param template optional template to apply to, and OCR on, each image.
+    * @return A brief string describing the job which was started.
+    */
+   @GET
+   @Path("/bulkIngest/{job}/{source: .*}")
+   public static String bulkIngest(@PathParam("job") String job, @PathParam("source") String source,
+      @QueryParam("template") String template) {
+      log.info("Starting ingest job: " + job);
+      new BulkIngest(job, source, template).start();
+      return "Started ingest job " + job + " from " + source;
+   }
+
+   /**
+    * Resumes an interrupted bulk ingest job from its original source and template.
+    *
+    * @param job identifies the ingest job.
+    * @return A brief string describing the job which was resumed, or that no such job exists.
+    */
+   @GET
+   @Path("/resumeIngest/{job}")
+   public static String resumeIngest(@PathParam("job") String job) {
+      DBObject ingest = IngestJobDAO.getJob(job);
+      if(ingest == null) {
+         return "No ingest job: " + job;
+      }
+      String template = (String) ingest.get("template");
+      new BulkIngest(job, ingest.get("source").toString(), template).start();
+      return "Resumed ingest job " + job;
+   }
+
+   /**
+    * Gets the progress of a bulk ingest job.
+    *
+    * @param job identifies the ingest job.
+    * @return status of the job and counts of images added, skipped and failed out of the total, or that no such job
+    *         exists.
+    */
+   @GET
+   @Path("/getIngestProgress/{job}")
+   public static String getIngestProgress(@PathParam("job") String job) {
+      DBObject ingest = IngestJobDAO.getJob(job);
+      if(ingest == null) {
+         return "No ingest job: " + job;
+      }
+      return ingest.get("status") + ": " + ingest.get("done") + " added, " + ingest.get("skipped") + " skipped, "
+         + ingest.get("failed") + " failed of " + ingest.get("total");
+   }
+
    /**
     * Adds a field to an image within NanoWeather.
     *
@@ -52,6 +145,7 @@ public class NanoWeather {
     * @param width field width in pixels.
     * @param highThresh confidence above which this field is considered high accuracy.
     * @param lowThresh confidence below which this field is considered low accuracy.
+    * @param lane priority lane in which the field is OCRed, interactive by default.
     * @return A brief string describing the field which was added.
     * @throws IOException
     */
@@ -59,8 +153,9 @@ public class NanoWeather {
    @Path("/addImageField/{image}/{field}/{x}/{y}/{height}/{width}/{highThresh}/{lowThresh}")
    public static String addImageField(@PathParam("image") String image, @PathParam("field") String field,
       @PathParam("x") int x, @PathParam("y") int y, @PathParam("height") int height, @PathParam("width") int width,
-      @PathParam("highThresh") int highThresh, @PathParam("lowThresh") int lowThresh) throws IOException {
-      ImageFieldDAO.insert(image, field, x, y, height, width, highThresh, lowThresh);
+      @PathParam("highThresh") int highThresh, @PathParam("lowThresh") int lowThresh,
+      @QueryParam("lane") @DefaultValue("interactive") String lane) throws IOException {
+      ImageFieldDAO.insert(image, field, x, y, height, width, highThresh, lowThresh, lane);
       return "Added " + height + "x" + width + " field: " + field + " to image: " + image + " at (" + x + "," + y
          + ") with a high threshhold of " + highThresh + " and a low threshhold of " + lowThresh;
    }
@@ -101,6 +196,7 @@ public class NanoWeather {
     * @param width field widths in pixels.
     * @param highThresh confidence above which this field is considered high accuracy.
     * @param lowThresh confidence below which this field is considered low accuracy.
+    * @param lane priority lane in which the fields are OCRed, interactive by default.
     * @return A brief string describing the fields which were added.
     * @throws Exception
     */
@@ -108,8 +204,8 @@ public class NanoWeather {
    @Path("/addImageFields/{image}/{field}/{x}/{y}/{height}/{width}/{highThresh}/{lowThresh}")
    public static String addImageFields(@PathParam("image") String image, @PathParam("field") String field,
       @PathParam("x") String x, @PathParam("y") String y, @PathParam("height") String height,
-      @PathParam("width") String width, @PathParam("highThresh") int highThresh, @PathParam("lowThresh") int lowThresh)
-         throws Exception {
+      @PathParam("width") String width, @PathParam("highThresh") int highThresh, @PathParam("lowThresh") int lowThresh,
+      @QueryParam("lane") @DefaultValue("interactive") String lane) throws Exception {
       String result = "";
       String[] fields = field.split("~");
       String[] xs = x.split("~");
@@ -127,11 +223,12 @@ public class NanoWeather {
       } else {
          for (int i = 0; i < fields.length; i++ ) {
             ImageFieldDAO.insert(image, fields[i], Integer.valueOf(xs[i]), Integer.valueOf(ys[i]),
-               Integer.valueOf(heights[i]), Integer.valueOf(widths[i]), highThresh, lowThresh);
+               Integer.valueOf(heights[i]), Integer.valueOf(widths[i]), highThresh, lowThresh, null);
             result += "<p>Attempting to add fields to image:</p>" + image + "<p>field:\t" + fields[i] + "</p><p>x:\t"
                + xs[i] + "</p><p>y:\t" + ys[i] + "</p><p>height:\t" + heights[i] + "</p><p>width:\t" + widths[i]
                + "</p>";
          }
+         OCRJobDAO.enqueue(image, Arrays.asList(fields), lane);
       }
       return result;
    }
@@ -147,6 +244,7 @@ public class NanoWeather {
     * @param width field widths in pixels.
     * @param highThresh confidence above which this field is considered high accuracy.
     * @param lowThresh confidence below which this field is considered low accuracy.
+    * @param lane priority lane in which the fields are OCRed, interactive by default.
     * @return A brief string describing the fields which were added.
     * @throws Exception
     */
@@ -154,7 +252,8 @@ public class NanoWeather {
    @Path("/addImageFields/{image}/{field}/{x}/{y}/{height}/{width}")
    public static String addImageFields(@PathParam("image") String image, @PathParam("field") String field,
       @PathParam("x") String x, @PathParam("y") String y, @PathParam("height") String height,
-      @PathParam("width") String width) throws Exception {
+      @PathParam("width") String width, @QueryParam("lane") @DefaultValue("interactive") String lane)
+         throws Exception {
       String result = "";
       String[] fields = field.split("~");
       String[] xs = x.split("~");
@@ -174,11 +273,12 @@ public class NanoWeather {
       } else {
          for (int i = 0; i < fields.length; i++ ) {
             ImageFieldDAO.insert(image, fields[i], Integer.valueOf(xs[i]), Integer.valueOf(ys[i]),
-               Integer.valueOf(heights[i]), Integer.valueOf(widths[i]), highThresh, lowThresh);
+               Integer.valueOf(heights[i]), Integer.valueOf(widths[i]), highThresh, lowThresh, null);
             result += "<p>Attempting to add fields to image:</p>" + image + "<p>field:\t" + fields[i] + "</p><p>x:\t"
                + xs[i] + "</p><p>y:\t" + ys[i] + "</p><p>height:\t" + heights[i] + "</p><p>width:\t" + widths[i]
                + "</p>";
          }
+         OCRJobDAO.enqueue(image, Arrays.asList(fields), lane);
       }
       return result;
    }
@@ -195,6 +295,7 @@ public class NanoWeather {
     * @param highThresh confidence above which this field is considered high accuracy.
     * @param lowThresh confidence below which this field is considered low accuracy.
     * @param charSet determines which characters are acceptable as OCR results.
+    * @param lane priority lane in which the field is OCRed, interactive by default.
     * @return A brief string describing the field which was added.
     */
    @GET
@@ -202,13 +303,135 @@ public class NanoWeather {
    public static String addImageField(@PathParam("image") String image, @PathParam("field") String field,
       @PathParam("x") int x, @PathParam("y") int y, @PathParam("height") int height, @PathParam("width") int width,
       @PathParam("highThresh") int highThresh, @PathParam("lowThresh") int lowThresh,
-      @PathParam("charSet") int charSet) {
-      ImageFieldDAO.insert(image, field, x, y, height, width, highThresh, lowThresh, charSet);
+      @PathParam("charSet") int charSet, @QueryParam("lane") @DefaultValue("interactive") String lane) {
+      ImageFieldDAO.insert(image, field, x, y, height, width, highThresh, lowThresh, charSet, lane);
       return "Added " + height + "x" + width + " field: " + field + " to image: " + image + " at (" + x + "," + y
          + ") with a high threshhold of " + highThresh + " and a low threshhold of " + lowThresh + " with char set: "
          + charSet;
    }
 
+   /**
+    * Runs OCR on every field of an image, loading the image only once for all of its fields.
+    *
+    * @param image identifies the image to OCR.
+    * @return A brief string describing how many fields were OCRed.
+    * @throws IOException
+    */
+   @GET
+   @Path("/ocrImage/{image}")
+   public static String ocrImage(@PathParam("image") String image) throws IOException {
+      int count = ImageFieldDAO.ocrImage(image, null);
+      return "OCRed " + count + " fields in image: " + image;
+   }
+
+   /**
+    * Reports the compute spent re-running OCR on low confidence fields since startup.
+    *
+    * @return attempts, time spent, improvements and fields resolved at each escalation level.
+    */
+   @GET
+   @Path("/getEscalationStats")
+   public static String getEscalationStats() {
+      return Escalation.getStats();
+   }
+
+   /**
+    * Reports how often OCR was skipped because an identical field had already been recognised.
+    *
+    * @return lookups answered from memory, from the ocrCache collection, and not at all since startup.
+    */
+   @GET
+   @Path("/getOCRCacheStats")
+   public static String getOCRCacheStats() {
+      return OCRCache.getStats();
+   }
+
+   /**
+    * Reports the state of the OCR job queue.
+    *
+    * @return number of OCR jobs pending, running, done and dead.
+    */
+   @GET
+   @Path("/getOCRQueue")
+   public static String getOCRQueue() {
+      return OCRJobDAO.getStats();
+   }
+
+   /**
+    * Reports the weight, concurrency cap and running jobs of each OCR lane in this process, with a histogram of the
+    * time its jobs took from being queued to completing.
+    *
+    * @return per lane scheduling statistics since startup.
+    */
+   @GET
+   @Path("/getOCRLatency")
+   public static String getOCRLatency() {
+      return OCRLanes.getStats();
+   }
+
+   /**
+    * Lists the OCR worker processes which have recorded a heartbeat within the last three heartbeat intervals.
+    *
+    * @return JSON array of live worker processes, with their number of workers and jobs running.
+    */
+   @GET
+   @Path("/getOCRWorkers")
+   public static String getOCRWorkers() {
+      return OCRWorkerDAO.getLive(new Date(System.currentTimeMillis() - 3 * OCRWorker.heartbeatMillis)).toString();
+   }
+
+   /**
+    * Lists the OCR jobs queued for an image, including their status, attempts and last error.
+    *
+    * @param image identifies the image.
+    * @return JSON array of the image's OCR jobs, oldest first.
+    */
+   @GET
+   @Path("/getOCRJobs/{image}")
+   public static String getOCRJobs(@PathParam("image") String image) {
+      return OCRJobDAO.getJobs(image).toString();
+   }
+
+   /**
+    * Queues every OCR job which ran out of attempts again.
+    *
+    * @return A brief string describing how many jobs were queued again.
+    */
+   @GET
+   @Path("/retryDeadOCRJobs")
+   public static String retryDeadOCRJobs() {
+      return "Queued " + OCRJobDAO.retryDead() + " dead OCR jobs again";
+   }
+
+   /**
+    * Cancels outstanding OCR of an image, aborting any recognition of it in progress.
+    *
+    * @param image identifies the image.
+    * @return A brief string describing how many jobs were cancelled.
+    */
+   @GET
+   @Path("/cancelOCR/{image}")
+   public static String cancelOCR(@PathParam("image") String image) {
+      return cancelOCR(image, null);
+   }
+
+   /**
+    * Cancels outstanding OCR of a field of an image, aborting any recognition of it in progress.
+    *
+    * @param image identifies the image.
+    * @param field identifies the field within the image.
+    * @return A brief string describing how many jobs were cancelled.
+    */
+   @GET
+   @Path("/cancelOCR/{image}/{field}")
+   public static String cancelOCR(@PathParam("image") String image, @PathParam("field") String field) {
+      // Runs in this process stop at once, runs elsewhere at their worker's next heartbeat.
+      OCRCancel.cancel(image, field);
+      int jobs = OCRJobDAO.cancel(image, field);
+      return "Cancelled OCR of " + (field == null ? "" : "field: " + field + " in ") + "image: " + image + " in "
+         + jobs + " jobs";
+   }
+
    /**
     * Adds a template to NanoWeather.
     *
@@ -225,6 +448,25 @@ public class NanoWeather {
       return "Added " + height + "x" + width + " template: " + template;
    }
 
+   /**
+    * Sets the Leptonica preprocessing steps run on each field OCRed from a template, replacing any set before.
+    *
+    * @param template identifies the template.
+    * @param prep comma separated steps, for example gray,sauvola:20,deskew,despeckle, see {@link Preprocess}.
+    * @return A brief string describing the steps which were set, or why they were rejected.
+    */
+   @GET
+   @Path("/setTemplatePrep/{template}/{prep}")
+   public static String setTemplatePrep(@PathParam("template") String template, @PathParam("prep") String prep) {
+      try {
+         Preprocess.parse(prep);
+      } catch (IllegalArgumentException e) {
+         return "Invalid preprocessing for template " + template + ": " + e.getMessage();
+      }
+      TemplateDAO.setVal(template, "prep", prep);
+      return "Set preprocessing for template " + template + " to " + prep;
+   }
+
    /**
     * Adds a field to a template within NanoWeather.
     *
@@ -285,6 +527,18 @@ public class NanoWeather {
       return ImageDAO.getVal(image, "location");
    }
 
+   /**
+    * Gets the status of an image within NanoWeather.
+    *
+    * @param image specifies the image to get the status of.
+    * @return pending while the image is being read, then ready or failed.
+    */
+   @GET
+   @Path("/getImageStatus/{image}")
+   public static String getImageStatus(@PathParam("image") String image) {
+      return ImageDAO.getVal(image, "status");
+   }
+
    /**
     * Gets the height of an image within NanoWeather.
     *
@@ -439,6 +693,34 @@ public class NanoWeather {
       return ImageFieldDAO.getVal(image, field, "confidence") + "";
    }
 
+   /**
+    * Gets the words recognised within a specific field, as parallel text, conf and box arrays, where box holds the
+    * left, top, right and bottom of each word in turn.
+    *
+    * @param image specifies the image the field is in.
+    * @param field specifies the field to get the words of.
+    * @return JSON describing each word's text, confidence and bounding box.
+    */
+   @GET
+   @Path("/getImageFieldWords/{image}/{field}")
+   public static String getImageFieldWords(@PathParam("image") String image, @PathParam("field") String field) {
+      return ImageFieldDAO.getVal(image, field, "words");
+   }
+
+   /**
+    * Gets the symbols recognised within a specific field, as parallel text, conf and box arrays, where box holds the
+    * left, top, right and bottom of each symbol in turn.
+    *
+    * @param image specifies the image the field is in.
+    * @param field specifies the field to get the symbols of.
+    * @return JSON describing each symbol's text, confidence and bounding box.
+    */
+   @GET
+   @Path("/getImageFieldSymbols/{image}/{field}")
+   public static String getImageFieldSymbols(@PathParam("image") String image, @PathParam("field") String field) {
+      return ImageFieldDAO.getVal(image, field, "symbols");
+   }
+
    /**
     * Gets all fields for a given image.
     *
@@ -754,19 +1036,23 @@ public class NanoWeather {
    }
 
    /**
-    * Remove an image from NanoWeather.
+    * Remove an image from NanoWeather, along with its fields. Outstanding OCR of the image is cancelled first so that
+    * no engine time is spent on it.
     *
     * @param image specifies the identifier of this image.
     */
    @GET
    @Path("/removeImage/{image}")
    public static String removeImage(@PathParam("image") String image) {
+      cancelOCR(image);
+      ImageFieldDAO.removeAll(image);
       ImageDAO.remove(image);
       return "removed image" + image;
    }
 
    /**
-    * Remove a field from an image within NanoWeather.
+    * Remove a field from an image within NanoWeather. Outstanding OCR of the field is cancelled first so that no
+    * engine time is spent on it.
     *
     * @param image identifies the image this field exists within.
     * @param field specifies an identifier for this field within this image.
@@ -774,6 +1060,7 @@ public class NanoWeather {
    @GET
    @Path("/removeImageField/{image}/{field}")
    public static String removeImageField(@PathParam("image") String image, @PathParam("field") String field) {
+      cancelOCR(image, field);
       ImageFieldDAO.remove(image, field);
       return "removed image field: " + field + " in " + image;
    }
@@ -802,7 +1089,7 @@ public class NanoWeather {
     * @param template identifier of the template which will be applied to the image.
     */
    public static void applyTemplateToImage(String image, String template) {
-      ImageFieldDAO.applyTemplate(template);
+      OCRJobDAO.enqueue(image, ImageFieldDAO.applyTemplate(image, template));
    }
 
    /**
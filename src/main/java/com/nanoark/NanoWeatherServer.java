@@ -0,0 +1,91 @@
+package com.nanoark;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.nanoark.utilities.ImageIngest;
+import com.nanoark.utilities.Log;
+import com.nanoark.utilities.OCRWorker;
+import com.sun.jersey.api.container.httpserver.HttpServerFactory;
+import com.sun.jersey.api.core.PackagesResourceConfig;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the REST API from the JDK's built in HTTP server instead of a servlet container, so that request handling is
+ * not limited by the container's thread pool. Resource methods block on Mongo and on remote image fetches, so on a JVM
+ * with virtual threads each request runs on its own virtual thread; elsewhere requests run on a fixed pool, as they
+ * would in a container. OCR never runs on request threads either way, it stays on the bounded engine pool and the OCR
+ * workers:
+ *
+ * <pre>
+ * java -Dnanoweather.http.threads=virtual -cp NanoWeather.jar com.nanoark.NanoWeatherServer 8080
+ * </pre>
+ *
+ * The argument is the port, defaulting to nanoweather.http.port or 8080, and resources are served under /rest as in
+ * the web application. nanoweather.http.threads is either <code>virtual</code>, the default, or the size of a fixed
+ * request pool. OCR workers are started, and pending images queued, as by {@link OCRWorkerListener}.
+ * {@link LoadTest} compares the two modes.
+ *
+ * @author Vino Sugunan
+ */
+public class NanoWeatherServer {
+   private static Logger log = Log.logger();
+
+   public static void main(String[] args) throws IOException, InterruptedException {
+      int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("nanoweather.http.port", 8080);
+      String threads = System.getProperty("nanoweather.http.threads", "virtual");
+      final ExecutorService requests = requestExecutor(threads);
+      if(System.getProperty("nanoweather.mongo.waitMultiplier") == null) {
+         // Far more requests may now wait on the Mongo connection pool than a container would ever let through.
+         System.setProperty("nanoweather.mongo.waitMultiplier", "1000");
+      }
+      final HttpServer server = HttpServerFactory.create("http://0.0.0.0:" + port + "/rest/",
+         new PackagesResourceConfig("com.nanoark"));
+      server.setExecutor(requests);
+      final CountDownLatch done = new CountDownLatch(1);
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+         @Override
+         public void run() {
+            server.stop(5);
+            requests.shutdown();
+            try {
+               requests.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            OCRWorker.stop();
+            done.countDown();
+         }
+      });
+      server.start();
+      OCRWorker.start(Integer.getInteger("nanoweather.ocr.workers", 2));
+      ImageIngest.resume();
+      log.info("Serving NanoWeather on port " + port + " with " + threads + " request threads");
+      done.await();
+   }
+
+   /**
+    * Creates the executor requests are handled on.
+    *
+    * @param threads <code>virtual</code> for a virtual thread per request, or the size of a fixed pool.
+    * @return the request executor, a fixed pool of 200 threads if virtual threads are not available.
+    */
+   static ExecutorService requestExecutor(String threads) {
+      if("virtual".equalsIgnoreCase(threads)) {
+         try {
+            // Looked up reflectively so that the project still builds for JVMs without virtual threads.
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+         } catch (Exception e) {
+            log.warning("Virtual threads are not available, using a fixed pool of 200 request threads: " + e);
+            return Executors.newFixedThreadPool(200);
+         }
+      }
+      return Executors.newFixedThreadPool(Integer.parseInt(threads));
+   }
+}
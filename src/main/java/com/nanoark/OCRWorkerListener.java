@@ -0,0 +1,27 @@
+package com.nanoark;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import com.nanoark.utilities.ImageIngest;
+import com.nanoark.utilities.OCRWorker;
+
+/**
+ * Starts OCR workers along with the web application, resuming any jobs left pending or running when it last stopped,
+ * and stops them when it is undeployed. Images still waiting to be probed are queued again. Set
+ * nanoweather.ocr.workers to 0 to leave OCR to standalone {@link OCRWorkerMain} processes.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRWorkerListener implements ServletContextListener {
+   @Override
+   public void contextInitialized(ServletContextEvent event) {
+      OCRWorker.start(Integer.getInteger("nanoweather.ocr.workers", 2));
+      ImageIngest.resume();
+   }
+
+   @Override
+   public void contextDestroyed(ServletContextEvent event) {
+      OCRWorker.stop();
+   }
+}
@@ -0,0 +1,40 @@
+package com.nanoark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+import com.nanoark.utilities.Log;
+import com.nanoark.utilities.OCRWorker;
+
+/**
+ * Runs OCR workers as a standalone process, without the web application, so that recognition can be scaled
+ * independently of the API. Start any number of these, on any number of nodes, against the same database:
+ *
+ * <pre>
+ * java -Dnanoweather.mongo.host=dbhost:27017 -cp NanoWeather.jar com.nanoark.OCRWorkerMain 4
+ * </pre>
+ *
+ * The argument is the number of jobs this process runs at once, defaulting to nanoweather.ocr.workers or 2. To keep
+ * the web application from running OCR itself, start it with -Dnanoweather.ocr.workers=0. Several worker processes
+ * can be run against one local mongod to try this out.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRWorkerMain {
+   private static Logger log = Log.logger();
+
+   public static void main(String[] args) throws InterruptedException {
+      int count = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("nanoweather.ocr.workers", 2);
+      final CountDownLatch done = new CountDownLatch(1);
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+         @Override
+         public void run() {
+            OCRWorker.stop();
+            done.countDown();
+         }
+      });
+      OCRWorker.start(count);
+      log.info("OCR worker process " + OCRWorker.node + " running " + count + " workers");
+      done.await();
+   }
+}
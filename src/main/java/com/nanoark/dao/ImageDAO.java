@@ -1,16 +1,23 @@
 package com.nanoark.dao;
 
-import java.awt.image.BufferedImage;
+import java.awt.Dimension;
 import java.io.IOException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
-import javax.imageio.ImageIO;
-
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.MongoException;
 import com.mongodb.WriteConcern;
+import com.nanoark.utilities.FileActions;
 import com.nanoark.utilities.Log;
 import com.nanoark.utilities.MongoDB;
 
@@ -31,17 +38,150 @@ public class ImageDAO {
     * @throws IOException
     */
    public static void insert(String name, String location) throws Exception {
-      BufferedImage imgBuf = ImageIO.read(new URL(location));
-      int imgH = imgBuf.getHeight();
-      int imgW = imgBuf.getWidth();
+      Dimension dimensions = FileActions.getDimensions(location);
+      int imgH = dimensions.height;
+      int imgW = dimensions.width;
       BasicDBObject insert = new BasicDBObject("_id", name);
       insert.append("location", location);
       insert.append("height", imgH);
       insert.append("width", imgW);
+      insert.append("status", "ready");
       dao.save(insert, WriteConcern.JOURNALED);
       log.info("Saved provided data for " + name);
    }
 
+   /**
+    * Adds an image to NanoWeather without reading it, leaving its dimensions to be filled in by
+    * {@link #probe(String)}.
+    *
+    * @param name specifies an identifier for this image.
+    * @param location specify the exact file location of this image.
+    * @param callback URL requested once the image has been probed, or null. It is kept with the image so that the
+    *           probe can be resumed after a restart.
+    */
+   public static void insertPending(String name, String location, String callback) {
+      BasicDBObject insert = new BasicDBObject("_id", name);
+      insert.append("location", location);
+      insert.append("status", "pending");
+      if(callback != null && !callback.isEmpty()) {
+         insert.append("callback", callback);
+      }
+      dao.save(insert, WriteConcern.JOURNALED);
+      log.info("Saved pending image " + name);
+   }
+
+   /**
+    * Claims a pending image for probing, so that only one node probes it and calls back. An image whose probe lease
+    * has expired, because the node probing it stopped, can be claimed again.
+    *
+    * @param name identifies the image to claim.
+    * @param owner identifies the node probing the image.
+    * @param leaseMillis time after which another node may claim the image.
+    * @return the image as it was before being claimed, or null if it is not waiting to be probed.
+    */
+   public static DBObject claimProbe(String name, String owner, long leaseMillis) {
+      Date now = new Date();
+      BasicDBObject query = waitingForProbe(now);
+      query.append("_id", name);
+      BasicDBObject set = new BasicDBObject("status", "probing");
+      set.append("probeOwner", owner);
+      set.append("probeExpires", new Date(now.getTime() + leaseMillis));
+      return dao.findAndModify(query, new BasicDBObject("$set", set));
+   }
+
+   /**
+    * Reads the dimensions of a claimed image and marks it as ready, or as failed if it could not be read.
+    *
+    * @param name identifies the image to probe.
+    * @return the status the image was left in, either ready or failed.
+    */
+   public static String probe(String name) {
+      String location = getVal(name, "location");
+      BasicDBObject set = new BasicDBObject();
+      try {
+         Dimension dimensions = FileActions.getDimensions(location);
+         set.append("height", dimensions.height);
+         set.append("width", dimensions.width);
+         set.append("status", "ready");
+      } catch (Exception e) {
+         log.warning("Could not read image " + name + " at " + location + "\n" + Log.getError(e));
+         set.append("status", "failed");
+         set.append("error", e.toString());
+      }
+      BasicDBObject query = new BasicDBObject("_id", name);
+      BasicDBObject update = new BasicDBObject("$set", set);
+      update.append("$unset", new BasicDBObject("probeOwner", 1).append("probeExpires", 1));
+      dao.update(query, update, false, false, WriteConcern.JOURNALED);
+      log.info("Probed image " + name + ": " + set.get("status"));
+      return set.getString("status");
+   }
+
+   /**
+    * Gets the images still waiting to be probed, such as those left pending when NanoWeather last stopped, or whose
+    * probe lease has expired.
+    *
+    * @return documents holding the _id and any callback of each pending image.
+    */
+   public static List<DBObject> getPending() {
+      BasicDBObject filter = new BasicDBObject("_id", 1);
+      filter.append("callback", 1);
+      DBCursor results = dao.find(waitingForProbe(new Date()), filter);
+      List<DBObject> pending = new ArrayList<DBObject>();
+      while (results.hasNext()) {
+         pending.add(results.next());
+      }
+      results.close();
+      return pending;
+   }
+
+   /**
+    * @param now current time.
+    * @return query matching images which are pending, or whose probe lease expired before now.
+    */
+   private static BasicDBObject waitingForProbe(Date now) {
+      BasicDBObject expired = new BasicDBObject("status", "probing");
+      expired.append("probeExpires", new BasicDBObject("$lt", now));
+      BasicDBList or = new BasicDBList();
+      or.add(new BasicDBObject("status", "pending"));
+      or.add(expired);
+      return new BasicDBObject("$or", or);
+   }
+
+   /**
+    * Adds many images to NanoWeather in a single batched write. Images which already exist are left unchanged.
+    *
+    * @param images image documents holding _id, location, height, width and status.
+    */
+   public static void insertAll(List<DBObject> images) {
+      if(images.isEmpty()) {
+         return;
+      }
+      try {
+         dao.insert(images, WriteConcern.JOURNALED.continueOnErrorForInsert(true));
+      } catch (MongoException.DuplicateKey e) {
+         log.warning("Skipped images which already exist: " + e.getMessage());
+      }
+      log.info("Saved " + images.size() + " images in one batch");
+   }
+
+   /**
+    * Finds which of the given images already exist within NanoWeather.
+    *
+    * @param names identifiers of the images to look for.
+    * @return the identifiers which exist.
+    */
+   public static Set<String> existing(Collection<String> names) {
+      BasicDBObject query = new BasicDBObject("_id", new BasicDBObject("$in", names));
+      BasicDBObject filter = new BasicDBObject("_id", 1);
+      DBCursor results = dao.find(query, filter);
+      Set<String> found = new HashSet<String>();
+      while (results.hasNext()) {
+         found.add(results.next().get("_id").toString());
+      }
+      results.close();
+      return found;
+   }
+
    public static String getFileExtension(String filepath) {
       String ext = "";
       int i = filepath.lastIndexOf('.');
@@ -1,18 +1,31 @@
 package com.nanoark.dao;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Logger;
 
 import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import com.nanoark.utilities.Log;
+import com.nanoark.utilities.OCRCancel;
 import com.nanoark.utilities.MongoDB;
-import com.nanoark.utilities.RunOCR;
+import com.nanoark.utilities.OCRField;
+import com.nanoark.utilities.TesseractJava;
+import com.nanoark.utilities.TesseractPool;
 
 /**
  * Represents database collection where image fields are stored.
@@ -24,6 +37,10 @@ public class ImageFieldDAO {
    private static DBCollection dao = MongoDB.getCollection("imageField");
    private static Logger       log = Log.logger();
 
+   static {
+      dao.ensureIndex(new BasicDBObject("image", 1));
+   }
+
    /**
     * Adds a field to an image within NanoWeather.
     *
@@ -39,7 +56,29 @@ public class ImageFieldDAO {
     */
    public static void insert(String image, String field, int x, int y, int height, int width, int highThresh,
       int lowThresh) throws IOException {
-      String location = ImageDAO.getVal(image, "location");
+      insert(image, field, x, y, height, width, highThresh, lowThresh, "normal");
+   }
+
+   /**
+    * Adds a field to an image within NanoWeather, optionally leaving OCR to be run later for the whole image.
+    *
+    * @param image identifies the image this field exists within.
+    * @param field specifies an identifier for this field within this image.
+    * @param x the distance in pixels of this field from the left edge.
+    * @param y the distance in pixels of this field from the top edge.
+    * @param height field height in pixels.
+    * @param width field width in pixels.
+    * @param highThresh confidence above which this field is considered high accuracy.
+    * @param lowThresh confidence below which this field is considered low accuracy.
+    * @param lane priority lane in which an OCR job is queued for this field alone, or null to queue none.
+    * @throws IOException
+    * @throws IllegalArgumentException if the lane is not recognised, in which case the field is not saved.
+    */
+   public static void insert(String image, String field, int x, int y, int height, int width, int highThresh,
+      int lowThresh, String lane) throws IOException {
+      if(lane != null) {
+         OCRJobDAO.getLane(lane);
+      }
       BasicDBObject query = new BasicDBObject("_id", image + "-" + field);
       query.append("image", image);
       query.append("field", field);
@@ -51,13 +90,34 @@ public class ImageFieldDAO {
       query.append("lowThresh", lowThresh);
       dao.save(query, WriteConcern.JOURNALED);
       log.info("Saved provided data for " + image + "-" + field);
-      new RunOCR(image, field, location, x, y, width, height).start();
-      log.info("Kicked OCR thread for " + image + "-" + field);
+      if(lane != null) {
+         OCRJobDAO.enqueue(image, Arrays.asList(field), lane);
+      }
    }
 
    public static void insert(String image, String field, int x, int y, int height, int width, int highThresh,
       int lowThresh, int charSet) {
-      String location = ImageDAO.getVal(image, "location");
+      insert(image, field, x, y, height, width, highThresh, lowThresh, charSet, "normal");
+   }
+
+   /**
+    * Adds a field with a character set to an image within NanoWeather, queueing an OCR job for it alone.
+    *
+    * @param image identifies the image this field exists within.
+    * @param field specifies an identifier for this field within this image.
+    * @param x the distance in pixels of this field from the left edge.
+    * @param y the distance in pixels of this field from the top edge.
+    * @param height field height in pixels.
+    * @param width field width in pixels.
+    * @param highThresh confidence above which this field is considered high accuracy.
+    * @param lowThresh confidence below which this field is considered low accuracy.
+    * @param charSet determines which characters are acceptable as OCR results.
+    * @param lane priority lane in which the OCR job is queued.
+    * @throws IllegalArgumentException if the lane is not recognised, in which case the field is not saved.
+    */
+   public static void insert(String image, String field, int x, int y, int height, int width, int highThresh,
+      int lowThresh, int charSet, String lane) {
+      OCRJobDAO.getLane(lane);
       BasicDBObject query = new BasicDBObject("_id", image + "-" + field);
       query.append("image", image);
       query.append("field", field);
@@ -70,8 +130,7 @@ public class ImageFieldDAO {
       query.append("charSet", charSet);
       dao.save(query, WriteConcern.JOURNALED);
       log.info("Saved provided data (with charset) for " + image + "-" + field);
-      new RunOCR(image, field, location, x, y, width, height).start();
-      log.info("Kicked OCR thread (with charset) for " + image + "-" + field);
+      OCRJobDAO.enqueue(image, Arrays.asList(field), lane);
    }
 
    public static DBObject getImageField(String image, String field) {
@@ -95,6 +154,165 @@ public class ImageFieldDAO {
       log.info("Ran setVal(field) update: " + image + "-" + field + "-" + key + "-" + val);
    }
 
+   /**
+    * Stores the result of an OCR job run on a field.
+    *
+    * @param image identifies the image this field exists within.
+    * @param field identifies the field which was recognised.
+    * @param ocrVal text recognised within the field.
+    * @param confidence mean confidence of the recognised text.
+    */
+   public static void setOCRResult(String image, String field, String ocrVal, int confidence) {
+      BasicDBObject query = new BasicDBObject("_id", image + "-" + field);
+      BasicDBObject set = new BasicDBObject("ocrVal", ocrVal);
+      set.append("confidence", confidence);
+      BasicDBObject update = new BasicDBObject("$set", set);
+      dao.update(query, update, false, false, WriteConcern.JOURNALED);
+      log.info("Saved OCR result for " + image + "-" + field + " with confidence " + confidence);
+   }
+
+   /**
+    * Runs OCR on fields of an image using a single load of the image, rather than a cropped file per field.
+    *
+    * @param image identifies the image to OCR.
+    * @param only fields to OCR, or null to OCR every field in the image.
+    * @return the number of fields which were OCRed.
+    * @throws IOException if the image could not be read, Tesseract could not be initialized, or a field ran past its
+    *            deadline.
+    * @throws CancellationException if the run was cancelled.
+    */
+   public static int ocrImage(String image, Collection<String> only) throws IOException {
+      OCRCancel run = OCRCancel.start(image);
+      try {
+         return ocrImage(image, only, run);
+      } finally {
+         run.finish();
+      }
+   }
+
+   /**
+    * Runs OCR on fields of an image using a single load of the image, under the deadline and cancellation flags of a
+    * run. Results of completed fields are stored even if others are abandoned; fields which ran past their deadline
+    * are stored with an ocrError and no text, and fields which were cancelled are not stored at all.
+    *
+    * @param image identifies the image to OCR.
+    * @param only fields to OCR, or null to OCR every field in the image.
+    * @param run deadline and cancellation flags of this run.
+    * @return the number of fields which were OCRed.
+    * @throws IOException if the image could not be read, Tesseract could not be initialized, or a field ran past its
+    *            deadline.
+    * @throws CancellationException if the run was cancelled.
+    */
+   public static int ocrImage(String image, Collection<String> only, OCRCancel run) throws IOException {
+      String location = ImageDAO.getVal(image, "location");
+      BasicDBObject query = new BasicDBObject("image", image);
+      DBCursor results = dao.find(query);
+      LinkedList<OCRField> fields = new LinkedList<OCRField>();
+      Map<String, String> preps = new HashMap<String, String>();
+      while (results.hasNext()) {
+         DBObject next = results.next();
+         String field = next.get("field").toString();
+         if(only == null || only.contains(field)) {
+            OCRField ocrField = new OCRField(field, Integer.parseInt(next.get("x") + ""),
+               Integer.parseInt(next.get("y") + ""), Integer.parseInt(next.get("width") + ""),
+               Integer.parseInt(next.get("height") + ""));
+            if(next.get("highThresh") != null) {
+               ocrField.highThresh = Integer.parseInt(next.get("highThresh") + "");
+            }
+            if(next.get("lowThresh") != null) {
+               ocrField.lowThresh = Integer.parseInt(next.get("lowThresh") + "");
+            }
+            // Fields added with a numeric character set code carry no list of characters, so only character sets
+            // stored as strings, such as those copied from templates, can restrict recognition.
+            if(next.get("charSet") instanceof String) {
+               ocrField.charSet = (String) next.get("charSet");
+            }
+            Object template = next.get("template");
+            if(template != null) {
+               if( !preps.containsKey(template.toString())) {
+                  preps.put(template.toString(), TemplateDAO.getPrep(template.toString()));
+               }
+               ocrField.prep = preps.get(template.toString());
+            }
+            fields.addLast(ocrField);
+         }
+      }
+      results.close();
+      long start = System.currentTimeMillis();
+      if(fields.isEmpty()) {
+         return 0;
+      }
+      if( !TesseractJava.ocrFields(location, fields, run)) {
+         throw new IOException("Could not OCR image " + image);
+      }
+      if(run.isCancelled(null)) {
+         throw new CancellationException("OCR of " + image + " was cancelled");
+      }
+      setOCRResults(image, fields);
+      log.info("OCRed " + fields.size() + " fields of " + image + " in " + (System.currentTimeMillis() - start)
+         + "ms using up to " + TesseractPool.size() + " engines");
+      List<String> failed = new ArrayList<String>();
+      for (OCRField field : fields) {
+         if(field.error != null && !OCRCancel.cancelled.equals(field.error)) {
+            failed.add(field.field + " " + field.error);
+         }
+      }
+      if( !failed.isEmpty()) {
+         throw new IOException("OCR of " + image + " abandoned for fields: " + failed);
+      }
+      return fields.size();
+   }
+
+   /**
+    * Stores the results of OCR jobs run on several fields of one image, waiting for the journal only once for the
+    * whole batch rather than once per field.
+    *
+    * @param image identifies the image these fields exist within.
+    * @param fields recognised fields whose OCR value and confidence will be stored, cancelled fields are skipped.
+    */
+   public static void setOCRResults(String image, Collection<OCRField> fields) {
+      DB db = dao.getDB();
+      db.requestStart();
+      try {
+         for (OCRField field : fields) {
+            if(OCRCancel.cancelled.equals(field.error)) {
+               continue;
+            }
+            BasicDBObject query = new BasicDBObject("_id", image + "-" + field.field);
+            BasicDBObject update = new BasicDBObject();
+            if(field.error != null) {
+               BasicDBObject set = new BasicDBObject("ocrVal", "");
+               set.append("confidence", -1);
+               set.append("ocrError", field.error);
+               update.append("$set", set);
+               update.append("$unset", new BasicDBObject("words", 1).append("symbols", 1));
+            } else {
+               BasicDBObject set = new BasicDBObject("ocrVal", field.ocrVal);
+               set.append("confidence", field.confidence);
+               BasicDBObject unset = new BasicDBObject("ocrError", 1);
+               // Boxes left from an earlier recognition would no longer match the text.
+               if(field.words != null) {
+                  set.append("words", field.words.toDBObject());
+               } else {
+                  unset.append("words", 1);
+               }
+               if(field.symbols != null) {
+                  set.append("symbols", field.symbols.toDBObject());
+               } else {
+                  unset.append("symbols", 1);
+               }
+               update.append("$set", set);
+               update.append("$unset", unset);
+            }
+            dao.update(query, update, false, false, WriteConcern.UNACKNOWLEDGED);
+         }
+         db.getLastError(WriteConcern.JOURNALED).throwOnError();
+      } finally {
+         db.requestDone();
+      }
+      log.info("Saved OCR results for " + fields.size() + " fields of " + image);
+   }
+
    public static LinkedList<String> getFields(String image) {
       BasicDBObject query = new BasicDBObject("image", image);
       BasicDBObject filter = new BasicDBObject("field", 1);
@@ -107,6 +325,21 @@ public class ImageFieldDAO {
       return fields;
    }
 
+   /**
+    * Finds which of the given images have at least one field.
+    *
+    * @param images identifiers of images.
+    * @return identifiers of those images which have fields.
+    */
+   public static Set<String> withFields(Collection<String> images) {
+      BasicDBObject query = new BasicDBObject("image", new BasicDBObject("$in", images));
+      Set<String> found = new HashSet<String>();
+      for (Object image : dao.distinct("image", query)) {
+         found.add(image.toString());
+      }
+      return found;
+   }
+
    public static LinkedList<String> getHighConfidence(String image) {
       BasicDBObject query = new BasicDBObject("image", image);
       BasicDBObject filter = new BasicDBObject("field", 1);
@@ -165,8 +398,51 @@ public class ImageFieldDAO {
       log.info("Removed: " + image + "-" + field);
    }
 
-   public static void applyTemplate(String template) {
-      // TODO Auto-generated method stub
+   /**
+    * Removes every field of an image in a single multi-document delete.
+    *
+    * @param image identifies the image whose fields will be removed.
+    * @return the number of fields removed.
+    */
+   public static int removeAll(String image) {
+      int removed = dao.remove(new BasicDBObject("image", image), WriteConcern.JOURNALED).getN();
+      log.info("Removed " + removed + " fields of " + image);
+      return removed;
+   }
+
+   /**
+    * Adds all fields from a template to an image. No OCR is kicked, so that the caller can OCR the image's fields
+    * together with {@link #ocrImage(String, Collection)}.
+    *
+    * @param image identifies the image the fields will be added to.
+    * @param template identifies the template whose fields will be added.
+    * @return the fields which were added.
+    */
+   public static LinkedList<String> applyTemplate(String image, String template) {
+      LinkedList<String> fields = new LinkedList<String>();
+      DB db = dao.getDB();
+      db.requestStart();
+      try {
+         for (DBObject templateField : TemplateFieldDAO.getFieldDocs(template)) {
+            String field = templateField.get("field").toString();
+            BasicDBObject query = new BasicDBObject("_id", image + "-" + field);
+            query.append("image", image);
+            query.append("field", field);
+            for (String key : new String[] {"x", "y", "height", "width", "highThresh", "lowThresh", "charSet"}) {
+               if(templateField.containsField(key)) {
+                  query.append(key, templateField.get(key));
+               }
+            }
+            query.append("template", template);
+            dao.save(query, WriteConcern.UNACKNOWLEDGED);
+            fields.addLast(field);
+         }
+         db.getLastError(WriteConcern.JOURNALED).throwOnError();
+      } finally {
+         db.requestDone();
+      }
+      log.info("Applied template " + template + " to " + image + ": " + fields.size() + " fields");
+      return fields;
    }
 
    public static void recenterField(String image, String template, int x, int y) {
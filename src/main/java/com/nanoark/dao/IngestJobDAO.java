@@ -0,0 +1,94 @@
+package com.nanoark.dao;
+
+import java.util.Date;
+import java.util.logging.Logger;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.nanoark.utilities.Log;
+import com.nanoark.utilities.MongoDB;
+
+/**
+ * Represents database collection where the progress of bulk image ingest jobs is stored.
+ *
+ * @author Vino Sugunan
+ */
+public class IngestJobDAO {
+   /** Data access object connecting to the ingestJob collection. */
+   private static DBCollection dao = MongoDB.getCollection("ingestJob");
+   private static Logger       log = Log.logger();
+
+   /**
+    * Starts, or restarts, a bulk ingest job. Counters are reset, since images ingested by an earlier run are counted
+    * again as they are skipped.
+    *
+    * @param job specifies an identifier for this job.
+    * @param source directory or manifest the images are read from.
+    * @param template template applied to each image, or null.
+    */
+   public static void start(String job, String source, String template) {
+      BasicDBObject insert = new BasicDBObject("_id", job);
+      insert.append("source", source);
+      insert.append("template", template);
+      insert.append("status", "running");
+      insert.append("total", 0);
+      insert.append("done", 0);
+      insert.append("skipped", 0);
+      insert.append("failed", 0);
+      insert.append("started", new Date());
+      insert.append("updated", new Date());
+      dao.save(insert, WriteConcern.JOURNALED);
+      log.info("Started ingest job " + job + " from " + source);
+   }
+
+   /**
+    * Records how many images a job will process.
+    *
+    * @param job identifies the job.
+    * @param total number of images listed by the job's source.
+    */
+   public static void setTotal(String job, int total) {
+      BasicDBObject query = new BasicDBObject("_id", job);
+      BasicDBObject set = new BasicDBObject("total", total);
+      set.append("updated", new Date());
+      dao.update(query, new BasicDBObject("$set", set), false, false, WriteConcern.JOURNALED);
+   }
+
+   /**
+    * Records the outcome of a batch of images.
+    *
+    * @param job identifies the job.
+    * @param done images ingested in this batch.
+    * @param skipped images in this batch which already existed.
+    * @param failed images in this batch which could not be read.
+    */
+   public static void progress(String job, int done, int skipped, int failed) {
+      BasicDBObject query = new BasicDBObject("_id", job);
+      BasicDBObject inc = new BasicDBObject("done", done);
+      inc.append("skipped", skipped);
+      inc.append("failed", failed);
+      BasicDBObject update = new BasicDBObject("$inc", inc);
+      update.append("$set", new BasicDBObject("updated", new Date()));
+      dao.update(query, update, false, false, WriteConcern.JOURNALED);
+   }
+
+   /**
+    * Marks a job as finished.
+    *
+    * @param job identifies the job.
+    * @param status final status, either done or failed.
+    */
+   public static void finish(String job, String status) {
+      BasicDBObject query = new BasicDBObject("_id", job);
+      BasicDBObject set = new BasicDBObject("status", status);
+      set.append("updated", new Date());
+      dao.update(query, new BasicDBObject("$set", set), false, false, WriteConcern.JOURNALED);
+      log.info("Finished ingest job " + job + ": " + status);
+   }
+
+   public static DBObject getJob(String job) {
+      return dao.findOne(new BasicDBObject("_id", job));
+   }
+}
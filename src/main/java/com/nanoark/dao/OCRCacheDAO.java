@@ -0,0 +1,54 @@
+package com.nanoark.dao;
+
+import java.util.Date;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.nanoark.utilities.MongoDB;
+import com.nanoark.utilities.OCRElements;
+
+/**
+ * Represents database collection where OCR results are stored by the hash of the field raster they were recognised
+ * from, so that identical crops in later images are not recognised again.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRCacheDAO {
+   /** Data access object connecting to the ocrCache collection. */
+   private static DBCollection dao = MongoDB.getCollection("ocrCache");
+
+   /**
+    * Gets a stored result.
+    *
+    * @param key hash of the field raster and engine configuration.
+    * @return document holding ocrVal, confidence and any words and symbols, or null if no result is stored.
+    */
+   public static DBObject get(String key) {
+      return dao.findOne(new BasicDBObject("_id", key));
+   }
+
+   /**
+    * Stores a result. The write is not acknowledged, since a lost entry only costs one more recognition.
+    *
+    * @param key hash of the field raster and engine configuration.
+    * @param ocrVal recognised text.
+    * @param confidence mean confidence of the recognised text.
+    * @param words recognised words with boxes relative to the field, or null.
+    * @param symbols recognised symbols with boxes relative to the field, or null.
+    */
+   public static void save(String key, String ocrVal, int confidence, OCRElements words, OCRElements symbols) {
+      BasicDBObject insert = new BasicDBObject("_id", key);
+      insert.append("ocrVal", ocrVal);
+      insert.append("confidence", confidence);
+      if(words != null) {
+         insert.append("words", words.toDBObject());
+      }
+      if(symbols != null) {
+         insert.append("symbols", symbols.toDBObject());
+      }
+      insert.append("created", new Date());
+      dao.save(insert, WriteConcern.UNACKNOWLEDGED);
+   }
+}
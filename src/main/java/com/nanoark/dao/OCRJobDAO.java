@@ -0,0 +1,335 @@
+package com.nanoark.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.nanoark.utilities.Log;
+import com.nanoark.utilities.MongoDB;
+
+/**
+ * Represents database collection where OCR jobs are queued, so that work survives a restart. A job is claimed by a
+ * worker for the length of a lease; a job whose lease expires, because its worker died, is claimed again by another.
+ * Failed jobs are retried with exponential backoff and moved to the dead state once they run out of attempts. Each job
+ * is queued in one of the priority {@link #lanes}, jobs queued before lanes existed being treated as normal. Jobs can
+ * be cancelled, whole or for some of their fields: pending jobs are cancelled outright, while running jobs are flagged
+ * and their workers abort them at the next heartbeat.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRJobDAO {
+   /** Data access object connecting to the ocrJob collection. */
+   private static DBCollection  dao         = MongoDB.getCollection("ocrJob");
+   private static Logger        log         = Log.logger();
+   /** Attempts a job is given before it is moved to the dead state. */
+   private static final int     maxAttempts = Integer.getInteger("nanoweather.ocr.maxAttempts", 5);
+   /** Delay before the first retry of a failed job, doubled for every further retry. */
+   private static final long    backoff     = Long.getLong("nanoweather.ocr.backoffMillis", 30000);
+   /** Longest delay before a retry. */
+   private static final long    maxBackoff  = Long.getLong("nanoweather.ocr.maxBackoffMillis", 30 * 60000);
+   /** Priority lanes, highest priority first. */
+   public static final String[] lanes       = {"interactive", "normal", "bulk"};
+
+   static {
+      dao.ensureIndex(new BasicDBObject("status", 1).append("availableAt", 1));
+      dao.ensureIndex(new BasicDBObject("status", 1).append("lane", 1).append("availableAt", 1));
+      dao.ensureIndex(new BasicDBObject("image", 1));
+   }
+
+   /**
+    * Queues fields of an image to be OCRed in the normal lane.
+    *
+    * @param image identifies the image to OCR.
+    * @param fields fields to OCR, or null to OCR every field in the image.
+    * @return identifier of the queued job.
+    */
+   public static Object enqueue(String image, Collection<String> fields) {
+      return enqueue(image, fields, "normal");
+   }
+
+   /**
+    * Queues fields of an image to be OCRed.
+    *
+    * @param image identifies the image to OCR.
+    * @param fields fields to OCR, or null to OCR every field in the image.
+    * @param lane priority lane of the job, one of {@link #lanes}.
+    * @return identifier of the queued job.
+    * @throws IllegalArgumentException if the lane is not recognised.
+    */
+   public static Object enqueue(String image, Collection<String> fields, String lane) {
+      getLane(lane);
+      Date now = new Date();
+      BasicDBObject insert = new BasicDBObject("image", image);
+      insert.append("fields", fields == null ? null : new ArrayList<String>(fields));
+      insert.append("lane", lane);
+      insert.append("status", "pending");
+      insert.append("attempts", 0);
+      insert.append("availableAt", now);
+      insert.append("created", now);
+      insert.append("updated", now);
+      dao.insert(insert, WriteConcern.JOURNALED);
+      log.info("Queued " + lane + " OCR job " + insert.get("_id") + " for " + image);
+      return insert.get("_id");
+   }
+
+   /**
+    * Claims the oldest job in a lane which is due, or whose worker's lease has expired while it has attempts left. Jobs
+    * whose lease expired on their last attempt are moved to the dead state first.
+    *
+    * @param owner identifies the claiming worker.
+    * @param leaseMillis how long the job is held before other workers may claim it.
+    * @param lane priority lane to claim from, one of {@link #lanes}.
+    * @return the claimed job, or null if no job is available in the lane.
+    */
+   public static DBObject claim(String owner, long leaseMillis, String lane) {
+      Date now = new Date();
+      Object inLane = inLane(lane);
+      BasicDBObject pending = new BasicDBObject("status", "pending");
+      pending.append("lane", inLane);
+      pending.append("availableAt", new BasicDBObject("$lte", now));
+      BasicDBObject expired = new BasicDBObject("status", "running");
+      expired.append("lane", inLane);
+      expired.append("leaseExpires", new BasicDBObject("$lt", now));
+      expired.append("attempts", new BasicDBObject("$lt", maxAttempts));
+      BasicDBList or = new BasicDBList();
+      or.add(pending);
+      or.add(expired);
+      BasicDBObject set = new BasicDBObject("status", "running");
+      set.append("leaseOwner", owner);
+      set.append("leaseExpires", new Date(now.getTime() + leaseMillis));
+      set.append("updated", now);
+      BasicDBObject update = new BasicDBObject("$set", set);
+      update.append("$inc", new BasicDBObject("attempts", 1));
+      return dao.findAndModify(new BasicDBObject("$or", or), null, new BasicDBObject("availableAt", 1), false,
+         update, true, false);
+   }
+
+   /**
+    * Moves running jobs whose lease expired on their last attempt to the dead state. A worker which dies part way
+    * through a job, such as in a crash inside native code, never records the failure, so without this a job which
+    * crashes its worker would be claimed again, and crash the next, indefinitely. Claims already pass such jobs over,
+    * so this runs from the workers' heartbeat rather than on every claim, and waits for no journal commit.
+    */
+   public static void buryExpired() {
+      Date now = new Date();
+      BasicDBObject query = new BasicDBObject("status", "running");
+      query.append("leaseExpires", new BasicDBObject("$lt", now));
+      query.append("attempts", new BasicDBObject("$gte", maxAttempts));
+      BasicDBObject set = new BasicDBObject("status", "dead");
+      set.append("error", "Lease expired on attempt " + maxAttempts + ", its worker is presumed to have died");
+      set.append("updated", now);
+      BasicDBObject update = new BasicDBObject("$set", set);
+      update.append("$unset", new BasicDBObject("leaseOwner", 1).append("leaseExpires", 1));
+      int buried = dao.update(query, update, false, true, WriteConcern.ACKNOWLEDGED).getN();
+      if(buried > 0) {
+         log.severe(buried + " OCR jobs are dead after their workers' leases expired on their last attempt");
+      }
+   }
+
+   /**
+    * @param lane name of a priority lane, or null for the normal lane.
+    * @return index of the lane in {@link #lanes}.
+    * @throws IllegalArgumentException if the lane is not recognised.
+    */
+   public static int getLane(String lane) {
+      if(lane == null) {
+         return 1;
+      }
+      for (int i = 0; i < lanes.length; i++ ) {
+         if(lanes[i].equals(lane)) {
+            return i;
+         }
+      }
+      throw new IllegalArgumentException("Unknown OCR lane: " + lane);
+   }
+
+   /**
+    * @param lane name of a priority lane.
+    * @return query matching jobs in the lane, the normal lane including jobs queued before lanes existed.
+    */
+   private static Object inLane(String lane) {
+      return "normal".equals(lane) ? new BasicDBObject("$in", Arrays.asList("normal", null)) : lane;
+   }
+
+   /**
+    * @param job a queued job.
+    * @return index in {@link #lanes} of the job's lane.
+    */
+   public static int getLane(DBObject job) {
+      try {
+         return getLane((String) job.get("lane"));
+      } catch (IllegalArgumentException e) {
+         return 1;
+      }
+   }
+
+   /**
+    * Extends the lease on a running job, provided the worker still holds it.
+    *
+    * @param job the claimed job.
+    * @param owner identifies the worker which claimed the job.
+    * @param leaseMillis how long from now the job is held before other workers may claim it.
+    * @return the job as it now stands, with any cancel flag or cancelledFields, or null if the lease had already been
+    *         lost to another worker.
+    */
+   public static DBObject renew(DBObject job, String owner, long leaseMillis) {
+      BasicDBObject query = new BasicDBObject("_id", job.get("_id"));
+      query.append("leaseOwner", owner);
+      query.append("status", "running");
+      BasicDBObject set = new BasicDBObject("leaseExpires", new Date(System.currentTimeMillis() + leaseMillis));
+      return dao.findAndModify(query, null, null, false, new BasicDBObject("$set", set), true, false);
+   }
+
+   /**
+    * Marks a job as done, provided the worker still holds its lease.
+    *
+    * @param job the claimed job.
+    * @param owner identifies the worker which claimed the job.
+    */
+   public static void complete(DBObject job, String owner) {
+      BasicDBObject query = new BasicDBObject("_id", job.get("_id"));
+      query.append("leaseOwner", owner);
+      BasicDBObject set = new BasicDBObject("status", "done");
+      set.append("updated", new Date());
+      BasicDBObject update = new BasicDBObject("$set", set);
+      update.append("$unset", new BasicDBObject("leaseOwner", 1).append("leaseExpires", 1));
+      dao.update(query, update, false, false, WriteConcern.JOURNALED);
+   }
+
+   /**
+    * Records a failed attempt, scheduling a retry after a backoff or moving the job to the dead state once it has run
+    * out of attempts.
+    *
+    * @param job the claimed job.
+    * @param owner identifies the worker which claimed the job.
+    * @param error description of the failure.
+    */
+   public static void fail(DBObject job, String owner, String error) {
+      int attempts = Integer.parseInt(job.get("attempts") + "");
+      BasicDBObject query = new BasicDBObject("_id", job.get("_id"));
+      query.append("leaseOwner", owner);
+      BasicDBObject set = new BasicDBObject("error", error);
+      set.append("updated", new Date());
+      if(attempts >= maxAttempts) {
+         set.append("status", "dead");
+         log.severe("OCR job " + job.get("_id") + " for " + job.get("image") + " is dead after " + attempts
+            + " attempts: " + error);
+      } else {
+         long delay = Math.min(backoff << Math.min(attempts - 1, 30), maxBackoff);
+         set.append("status", "pending");
+         set.append("availableAt", new Date(System.currentTimeMillis() + delay));
+         log.warning("OCR job " + job.get("_id") + " for " + job.get("image") + " failed, retrying in " + delay
+            + "ms: " + error);
+      }
+      BasicDBObject update = new BasicDBObject("$set", set);
+      update.append("$unset", new BasicDBObject("leaseOwner", 1).append("leaseExpires", 1));
+      dao.update(query, update, false, false, WriteConcern.JOURNALED);
+   }
+
+   /**
+    * Marks a job as cancelled once its worker has abandoned it, provided the worker still holds its lease.
+    *
+    * @param job the claimed job.
+    * @param owner identifies the worker which claimed the job.
+    */
+   public static void cancelled(DBObject job, String owner) {
+      BasicDBObject query = new BasicDBObject("_id", job.get("_id"));
+      query.append("leaseOwner", owner);
+      BasicDBObject set = new BasicDBObject("status", "cancelled");
+      set.append("updated", new Date());
+      BasicDBObject update = new BasicDBObject("$set", set);
+      update.append("$unset", new BasicDBObject("leaseOwner", 1).append("leaseExpires", 1));
+      dao.update(query, update, false, false, WriteConcern.JOURNALED);
+      log.info("Cancelled OCR job " + job.get("_id") + " for " + job.get("image"));
+   }
+
+   /**
+    * Cancels outstanding OCR of an image or one of its fields. Pending jobs for the whole image are cancelled outright.
+    * For a single field, the field is removed from pending jobs listing it, jobs left with no fields are cancelled,
+    * and jobs covering every field record it in cancelledFields so that it is skipped. Running jobs are flagged, and
+    * their workers abort them at their next heartbeat.
+    *
+    * @param image identifies the image.
+    * @param field field whose OCR is cancelled, or null to cancel OCR of the whole image.
+    * @return number of jobs affected.
+    */
+   public static int cancel(String image, String field) {
+      Date now = new Date();
+      BasicDBObject pending = new BasicDBObject("image", image).append("status", "pending");
+      BasicDBObject running = new BasicDBObject("image", image).append("status", "running");
+      int affected;
+      if(field == null) {
+         affected = dao.update(pending, new BasicDBObject("$set", new BasicDBObject("status", "cancelled").append(
+            "updated", now)), false, true, WriteConcern.JOURNALED).getN();
+         affected += dao.update(running, new BasicDBObject("$set", new BasicDBObject("cancel", true)), false, true,
+            WriteConcern.JOURNALED).getN();
+      } else {
+         BasicDBObject outstanding = new BasicDBObject("image", image);
+         outstanding.append("status", new BasicDBObject("$in", Arrays.asList("pending", "running")));
+         BasicDBObject listed = new BasicDBObject(outstanding).append("fields", field);
+         BasicDBObject update = new BasicDBObject("$pull", new BasicDBObject("fields", field));
+         update.append("$addToSet", new BasicDBObject("cancelledFields", field));
+         affected = dao.update(listed, update, false, true, WriteConcern.JOURNALED).getN();
+         BasicDBObject whole = new BasicDBObject(outstanding).append("fields", null);
+         affected += dao.update(whole, new BasicDBObject("$addToSet", new BasicDBObject("cancelledFields", field)),
+            false, true, WriteConcern.JOURNALED).getN();
+         BasicDBObject empty = new BasicDBObject(pending).append("fields", new BasicDBObject("$size", 0));
+         dao.update(empty, new BasicDBObject("$set", new BasicDBObject("status", "cancelled").append("updated", now)),
+            false, true, WriteConcern.JOURNALED);
+      }
+      log.info("Cancelled OCR of " + image + (field == null ? "" : "-" + field) + " in " + affected + " jobs");
+      return affected;
+   }
+
+   /**
+    * Queues every dead job again with a fresh set of attempts.
+    *
+    * @return number of jobs queued again.
+    */
+   public static int retryDead() {
+      BasicDBObject set = new BasicDBObject("status", "pending");
+      set.append("attempts", 0);
+      set.append("availableAt", new Date());
+      set.append("updated", new Date());
+      return dao.update(new BasicDBObject("status", "dead"), new BasicDBObject("$set", set), false, true,
+         WriteConcern.JOURNALED).getN();
+   }
+
+   /**
+    * @param image identifies the image.
+    * @return every job queued for the image, oldest first.
+    */
+   public static List<DBObject> getJobs(String image) {
+      DBCursor results = dao.find(new BasicDBObject("image", image)).sort(new BasicDBObject("created", 1));
+      List<DBObject> jobs = new ArrayList<DBObject>();
+      while (results.hasNext()) {
+         jobs.add(results.next());
+      }
+      results.close();
+      return jobs;
+   }
+
+   /**
+    * @return number of jobs in each state, and of pending jobs in each lane.
+    */
+   public static String getStats() {
+      StringBuilder stats = new StringBuilder();
+      for (String status : new String[] {"pending", "running", "done", "dead", "cancelled"}) {
+         stats.append(status).append("=").append(dao.count(new BasicDBObject("status", status))).append("\n");
+      }
+      for (String lane : lanes) {
+         stats.append("pending.").append(lane).append("=");
+         stats.append(dao.count(new BasicDBObject("status", "pending").append("lane", inLane(lane)))).append("\n");
+      }
+      return stats.toString();
+   }
+}
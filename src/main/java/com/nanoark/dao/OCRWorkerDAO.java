@@ -0,0 +1,60 @@
+package com.nanoark.dao;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.nanoark.utilities.MongoDB;
+
+/**
+ * Represents database collection where OCR worker processes record their heartbeats, so that the nodes currently
+ * working the shared job queue can be listed.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRWorkerDAO {
+   /** Data access object connecting to the ocrWorker collection. */
+   private static DBCollection dao = MongoDB.getCollection("ocrWorker");
+
+   /**
+    * Records that a worker process is alive.
+    *
+    * @param node identifies the process.
+    * @param workers number of jobs the process runs at once.
+    * @param running number of jobs the process is running now.
+    */
+   public static void heartbeat(String node, int workers, int running) {
+      BasicDBObject set = new BasicDBObject("workers", workers);
+      set.append("running", running);
+      set.append("lastSeen", new Date());
+      dao.update(new BasicDBObject("_id", node), new BasicDBObject("$set", set), true, false, WriteConcern.JOURNALED);
+   }
+
+   /**
+    * Removes a worker process which is shutting down.
+    *
+    * @param node identifies the process.
+    */
+   public static void remove(String node) {
+      dao.remove(new BasicDBObject("_id", node), WriteConcern.JOURNALED);
+   }
+
+   /**
+    * @param since earliest heartbeat counted as alive.
+    * @return worker processes whose last heartbeat is no older than since.
+    */
+   public static List<DBObject> getLive(Date since) {
+      DBCursor results = dao.find(new BasicDBObject("lastSeen", new BasicDBObject("$gte", since)));
+      List<DBObject> workers = new ArrayList<DBObject>();
+      while (results.hasNext()) {
+         workers.add(results.next());
+      }
+      results.close();
+      return workers;
+   }
+}
@@ -2,6 +2,7 @@ package com.nanoark.dao;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import com.nanoark.utilities.MongoDB;
 
@@ -33,6 +34,18 @@ public class TemplateDAO {
       dao.update(query, update, false, false, WriteConcern.JOURNALED);
    }
 
+   /**
+    * Gets the Leptonica preprocessing steps run on fields OCRed from this template.
+    *
+    * @param template identifies the template.
+    * @return comma separated preprocessing steps, or null if none are set or the template does not exist.
+    */
+   public static String getPrep(String template) {
+      BasicDBObject query = new BasicDBObject("_id", template);
+      DBObject doc = dao.findOne(query, new BasicDBObject("prep", 1));
+      return doc == null || doc.get("prep") == null ? null : doc.get("prep").toString();
+   }
+
    public static void remove(String template) {
       BasicDBObject query = new BasicDBObject("_id", template);
       dao.remove(query, WriteConcern.JOURNALED);
@@ -1,11 +1,13 @@
 package com.nanoark.dao;
 
 import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import com.nanoark.utilities.Log;
 import com.nanoark.utilities.MongoDB;
@@ -83,6 +85,20 @@ public class TemplateFieldDAO {
       return fields;
    }
 
+   /**
+    * Gets every field within a template along with its position, size, thresholds and character set.
+    *
+    * @param template identifies the template to retrieve fields from.
+    * @return the documents describing each field in the template.
+    */
+   public static List<DBObject> getFieldDocs(String template) {
+      BasicDBObject query = new BasicDBObject("template", template);
+      DBCursor results = dao.find(query);
+      List<DBObject> fields = results.toArray();
+      results.close();
+      return fields;
+   }
+
    public static void remove(String template, String field) {
       BasicDBObject query = new BasicDBObject("_id", template + "-" + field);
       dao.remove(query, WriteConcern.JOURNALED);
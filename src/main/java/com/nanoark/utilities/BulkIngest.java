@@ -0,0 +1,213 @@
+package com.nanoark.utilities;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.util.JSON;
+import com.nanoark.dao.ImageDAO;
+import com.nanoark.dao.ImageFieldDAO;
+import com.nanoark.dao.IngestJobDAO;
+import com.nanoark.dao.OCRJobDAO;
+
+/**
+ * Thread which adds every image listed by a directory or manifest to NanoWeather. Images are probed in parallel and
+ * saved in batches, progress is recorded in the ingestJob collection after each batch, and images which already exist
+ * are skipped so that an interrupted job can be resumed by running it again. Skipped images which have no fields yet,
+ * because the job was interrupted between saving a batch and templating it, are templated when the job resumes.
+ * <p>
+ * A manifest is either a CSV file of <code>image,location</code> lines or a JSON array of
+ * <code>{"image": ..., "location": ...}</code> objects. A directory contributes every image file within it, named by
+ * its file name.
+ *
+ * @author Vino Sugunan
+ */
+public class BulkIngest extends Thread {
+   private static Logger                log       = Log.logger();
+   /** Number of images saved in each batched write. */
+   private static final int             batchSize = 500;
+   /** Threads probing images for all bulk jobs. */
+   private static final ExecutorService workers   = Executors.newFixedThreadPool(Integer.getInteger(
+                                                     "nanoweather.ingest.bulkThreads", 2 * Runtime.getRuntime()
+                                                        .availableProcessors()));
+   /** Identifier of this job. */
+   private final String                 job;
+   /** Directory or manifest listing the images. */
+   private final String                 source;
+   /** Template applied to each image, or null. */
+   private final String                 template;
+
+   /**
+    * Prepares a bulk ingest job.
+    *
+    * @param job specifies an identifier for this job, reusing an identifier resumes that job.
+    * @param source local directory, or path or URL of a CSV or JSON manifest.
+    * @param template template applied, and OCRed, for each image, or null.
+    */
+   public BulkIngest(String job, String source, String template) {
+      this.job = job;
+      this.source = source;
+      this.template = template;
+   }
+
+   @Override
+   public void run() {
+      IngestJobDAO.start(job, source, template);
+      try {
+         List<String[]> entries = list(source);
+         IngestJobDAO.setTotal(job, entries.size());
+         for (int i = 0; i < entries.size(); i += batchSize) {
+            ingest(entries.subList(i, Math.min(i + batchSize, entries.size())));
+         }
+         IngestJobDAO.finish(job, "done");
+      } catch (Exception e) {
+         log.severe(Log.getError(e));
+         IngestJobDAO.finish(job, "failed");
+      }
+   }
+
+   /**
+    * Probes and saves one batch of images, skipping those which already exist, then templates the batch's images which
+    * have no fields.
+    *
+    * @param batch image identifier and location pairs.
+    * @throws InterruptedException
+    */
+   private void ingest(List<String[]> batch) throws InterruptedException {
+      List<String> names = new ArrayList<String>(batch.size());
+      for (String[] entry : batch) {
+         names.add(entry[0]);
+      }
+      Set<String> existing = ImageDAO.existing(names);
+      List<Future<DBObject>> probes = new ArrayList<Future<DBObject>>(batch.size());
+      for (final String[] entry : batch) {
+         if( !existing.contains(entry[0])) {
+            probes.add(workers.submit(new Callable<DBObject>() {
+               @Override
+               public DBObject call() throws Exception {
+                  return probe(entry[0], entry[1]);
+               }
+            }));
+         }
+      }
+      List<DBObject> images = new ArrayList<DBObject>(probes.size());
+      int failed = 0;
+      for (Future<DBObject> probe : probes) {
+         try {
+            images.add(probe.get());
+         } catch (ExecutionException e) {
+            log.warning("Could not ingest image for job " + job + "\n" + e.getCause());
+            failed++ ;
+         }
+      }
+      ImageDAO.insertAll(images);
+      if(template != null) {
+         List<String> untemplated = new ArrayList<String>(images.size());
+         for (DBObject image : images) {
+            untemplated.add(image.get("_id").toString());
+         }
+         if( !existing.isEmpty()) {
+            Set<String> bare = new HashSet<String>(existing);
+            bare.removeAll(ImageFieldDAO.withFields(existing));
+            untemplated.addAll(bare);
+         }
+         applyTemplate(untemplated);
+      }
+      IngestJobDAO.progress(job, images.size(), existing.size(), failed);
+      log.info("Ingest job " + job + ": " + images.size() + " added, " + existing.size() + " skipped, " + failed
+         + " failed");
+   }
+
+   /**
+    * Adds this job's template to saved images and queues their fields to be OCRed in the bulk lane, behind
+    * interactive requests.
+    *
+    * @param images identifiers of saved images which have no fields yet.
+    */
+   private void applyTemplate(List<String> images) {
+      for (String name : images) {
+         try {
+            OCRJobDAO.enqueue(name, ImageFieldDAO.applyTemplate(name, template), "bulk");
+         } catch (MongoException e) {
+            log.warning("Could not apply template " + template + " for job " + job + "\n" + e);
+         }
+      }
+   }
+
+   /**
+    * Reads the dimensions of an image and builds the document which will be saved for it.
+    *
+    * @param name identifier of the image.
+    * @param location URL of the image.
+    * @return image document ready to be saved.
+    * @throws IOException if the image could not be read.
+    */
+   private static DBObject probe(String name, String location) throws IOException {
+      Dimension dimensions = FileActions.getDimensions(location);
+      BasicDBObject image = new BasicDBObject("_id", name);
+      image.append("location", location);
+      image.append("height", dimensions.height);
+      image.append("width", dimensions.width);
+      image.append("status", "ready");
+      return image;
+   }
+
+   /**
+    * Lists the images in a directory or manifest.
+    *
+    * @param source local directory, or path or URL of a CSV or JSON manifest.
+    * @return image identifier and location pairs.
+    * @throws IOException if the source could not be read.
+    */
+   private static List<String[]> list(String source) throws IOException {
+      List<String[]> entries = new ArrayList<String[]>();
+      File file = new File(source);
+      if(file.isDirectory()) {
+         Set<String> suffixes = new HashSet<String>(Arrays.asList(ImageIO.getReaderFileSuffixes()));
+         File[] files = file.listFiles();
+         Arrays.sort(files);
+         for (File image : files) {
+            String name = image.getName();
+            String ext = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+            if(image.isFile() && suffixes.contains(ext)) {
+               entries.add(new String[] {name, image.toURI().toString()});
+            }
+         }
+         return entries;
+      }
+      String manifest = new String(FileActions.readBytes(file.exists() ? file.toURI().toString() : source), "UTF-8");
+      if(source.toLowerCase().endsWith(".json")) {
+         for (Object entry : (BasicDBList) JSON.parse(manifest)) {
+            DBObject image = (DBObject) entry;
+            entries.add(new String[] {image.get("image").toString(), image.get("location").toString()});
+         }
+      } else {
+         for (String line : manifest.split("\r?\n")) {
+            line = line.trim();
+            int comma = line.indexOf(',');
+            if(line.isEmpty() || line.startsWith("#") || comma < 0) {
+               continue;
+            }
+            entries.add(new String[] {line.substring(0, comma).trim(), line.substring(comma + 1).trim()});
+         }
+      }
+      return entries;
+   }
+}
@@ -0,0 +1,121 @@
+package com.nanoark.utilities;
+
+import static org.bytedeco.javacpp.lept.pixDestroy;
+import static org.bytedeco.javacpp.tesseract.PSM_SINGLE_LINE;
+import static org.bytedeco.javacpp.tesseract.PSM_SPARSE_TEXT;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import org.bytedeco.javacpp.lept.PIX;
+import org.bytedeco.javacpp.tesseract.TessBaseAPI;
+
+/**
+ * Re-runs OCR on fields whose confidence is below their low threshold, with progressively more expensive settings,
+ * until a result exceeds the field's high threshold or every level has been tried. Each level adds to the one before:
+ * <ol>
+ * <li><code>upscale</code> scales small text up to twice the usual target height.</li>
+ * <li><code>sauvola</code> also binarises the upscaled field with Sauvola's local threshold.</li>
+ * <li><code>psm</code> also switches to single line segmentation for short fields, or sparse text for tall ones.</li>
+ * <li><code>charSet</code> also restricts recognition to the field's character set, skipped if it has none.</li>
+ * </ol>
+ * The best result of all levels is kept. Attempts, time spent, improvements and fields resolved are counted per
+ * level.
+ *
+ * @author Vino Sugunan
+ */
+public class Escalation {
+   private static Logger                log      = Log.logger();
+   /** Names of the escalation levels, cheapest first. */
+   public static final String[]         levels   = {"upscale", "sauvola", "psm", "charSet"};
+   /** Preprocessing run on the field at each level, upscaling first so that Sauvola's window fits small fields. */
+   private static final String[]        preps    = {"upscale:" + 2 * Preprocess.textHeight,
+      "upscale:" + 2 * Preprocess.textHeight + ",gray,sauvola",
+      "upscale:" + 2 * Preprocess.textHeight + ",gray,sauvola",
+      "upscale:" + 2 * Preprocess.textHeight + ",gray,sauvola"};
+   /** Number of fields tried at each level. */
+   private static final AtomicLongArray attempts = new AtomicLongArray(levels.length);
+   /** Nanoseconds spent at each level. */
+   private static final AtomicLongArray nanos    = new AtomicLongArray(levels.length);
+   /** Number of fields whose confidence each level raised. */
+   private static final AtomicLongArray improved = new AtomicLongArray(levels.length);
+   /** Number of fields each level raised above their high threshold. */
+   private static final AtomicLongArray resolved = new AtomicLongArray(levels.length);
+
+   /**
+    * Escalates a low confidence field, replacing its results with those of the best level.
+    *
+    * @param api engine which recognised the field, its settings are restored before returning.
+    * @param image decoded image containing the field, only read by this method.
+    * @param field field to escalate.
+    * @param run deadline and cancellation flags of the run the field belongs to, escalation stops once a level is
+    *           aborted.
+    */
+   public static void escalate(TessBaseAPI api, PIX image, OCRField field, OCRCancel run) {
+      int psm = api.GetPageSegMode();
+      int start = field.confidence;
+      PIX crop = TesseractJava.clip(image, field);
+      try {
+         for (int level = 0; level < levels.length && field.confidence <= field.highThresh; level++ ) {
+            if(level == 3 && (field.charSet == null || field.charSet.isEmpty())) {
+               continue;
+            }
+            long begin = System.nanoTime();
+            if(level == 2) {
+               api.SetPageSegMode(field.height < 3 * Preprocess.textHeight ? PSM_SINGLE_LINE : PSM_SPARSE_TEXT);
+            }
+            if(level == 3) {
+               api.SetVariable("tessedit_char_whitelist", field.charSet);
+            }
+            OCRField attempt = new OCRField(field.field, field.x, field.y, field.width, field.height);
+            try {
+               PIX prepped = Preprocess.apply(crop, preps[level]);
+               try {
+                  TesseractJava.recognise(api, prepped, attempt, run);
+               } finally {
+                  pixDestroy(prepped);
+               }
+            } catch (IllegalStateException e) {
+               // Keep the best result so far and try the next level.
+               log.warning("Escalation of " + field.field + " failed at " + levels[level] + ": " + e.getMessage());
+               continue;
+            }
+            attempts.incrementAndGet(level);
+            nanos.addAndGet(level, System.nanoTime() - begin);
+            if(attempt.error != null) {
+               log.fine("Escalation of " + field.field + " stopped at " + levels[level] + ": " + attempt.error);
+               break;
+            }
+            if(attempt.confidence > field.confidence) {
+               improved.incrementAndGet(level);
+               field.ocrVal = attempt.ocrVal;
+               field.confidence = attempt.confidence;
+               field.words = attempt.words;
+               field.symbols = attempt.symbols;
+               if(field.confidence > field.highThresh) {
+                  resolved.incrementAndGet(level);
+               }
+            }
+         }
+      } finally {
+         pixDestroy(crop);
+         api.SetPageSegMode(psm);
+         api.SetVariable("tessedit_char_whitelist", "");
+      }
+      log.fine("Escalated " + field.field + " from confidence " + start + " to " + field.confidence);
+   }
+
+   /**
+    * @return attempts, time spent, improvements and fields resolved at each level since startup.
+    */
+   public static String getStats() {
+      StringBuilder stats = new StringBuilder();
+      for (int level = 0; level < levels.length; level++ ) {
+         stats.append(levels[level]).append(": attempts=").append(attempts.get(level));
+         stats.append(", ms=").append(nanos.get(level) / 1000000);
+         stats.append(", improved=").append(improved.get(level));
+         stats.append(", resolved=").append(resolved.get(level)).append("\n");
+      }
+      return stats.toString();
+   }
+}
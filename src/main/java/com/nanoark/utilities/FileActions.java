@@ -1,12 +1,25 @@
 package com.nanoark.utilities;
 
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 /**
  * Class with specific file actions which are used within NanoWeather.
@@ -29,10 +42,14 @@ public class FileActions {
     */
    public static void getSubImage(String from, String to, int x, int y, int width, int height) throws IOException {
       Boolean fail = false;
+      ImageInputStream iis = null;
+      ImageReader reader = null;
       try {
-         BufferedImage fromBuf = ImageIO.read(new URL(from));
-         int maxWidth = fromBuf.getWidth();
-         int maxHeight = fromBuf.getHeight();
+         // Decode only the field's region rather than the whole image.
+         iis = openImageStream(from);
+         reader = getReader(iis, from);
+         int maxWidth = reader.getWidth(0);
+         int maxHeight = reader.getHeight(0);
          if(x > maxWidth) {
             x = maxWidth - 1;
             fail = true;
@@ -60,13 +77,155 @@ public class FileActions {
             log.warning(message);
             throw new IOException("Field dimensions exceed image boundary");
          }
-         BufferedImage out = fromBuf.getSubimage(x, y, width, height);
+         ImageReadParam param = reader.getDefaultReadParam();
+         param.setSourceRegion(new Rectangle(x, y, width, height));
+         BufferedImage out = reader.read(0, param);
          ImageIO.write(out, "png", new File(to));
          prepforOCR.prep(to);
          log.info("image prepped");
       } catch (IOException e) {
          log.severe(Log.getError(e));
          throw e;
+      } finally {
+         if(reader != null) {
+            reader.dispose();
+         }
+         if(iis != null) {
+            iis.close();
+         }
+      }
+   }
+
+   /**
+    * Reads the dimensions of an image from its header, without decoding any pixels.
+    *
+    * @param location URL of the image.
+    * @return width and height in pixels of the first page of the image.
+    * @throws IOException if the image could not be read or its format is not supported.
+    */
+   public static Dimension getDimensions(String location) throws IOException {
+      ImageInputStream iis = openImageStream(location);
+      ImageReader reader = null;
+      try {
+         reader = getReader(iis, location);
+         return new Dimension(reader.getWidth(0), reader.getHeight(0));
+      } finally {
+         if(reader != null) {
+            reader.dispose();
+         }
+         iis.close();
+      }
+   }
+
+   /**
+    * Opens an image for reading. Local files are memory mapped, so repeated reads of the same image are served from
+    * the OS page cache, other locations are streamed and cached in memory.
+    *
+    * @param location URL of the image.
+    * @return stream of the encoded image, closing it also closes any underlying connection.
+    * @throws IOException if the image could not be opened.
+    */
+   public static ImageInputStream openImageStream(String location) throws IOException {
+      ByteBuffer mapped = map(location);
+      if(mapped != null) {
+         return new MappedImageInputStream(mapped);
+      }
+      final InputStream in = new URL(location).openStream();
+      return new MemoryCacheImageInputStream(in) {
+         @Override
+         public void close() throws IOException {
+            try {
+               super.close();
+            } finally {
+               in.close();
+            }
+         }
+      };
+   }
+
+   /**
+    * Memory maps a local file read only. The mapping is released once the returned buffer is garbage collected.
+    *
+    * @param location URL of the file.
+    * @return contents of the file, or null if the location is not a local file or is too large to map.
+    * @throws IOException if the local file could not be opened.
+    */
+   public static ByteBuffer map(String location) throws IOException {
+      File file = getLocalFile(location);
+      if(file == null || file.length() > Integer.MAX_VALUE) {
+         return null;
+      }
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         FileChannel channel = raf.getChannel();
+         return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+         raf.close();
+      }
+   }
+
+   /**
+    * @param location URL of a file.
+    * @return the file a <code>file:</code> URL refers to, or null for any other URL.
+    * @throws IOException if the location is not a valid URL.
+    */
+   public static File getLocalFile(String location) throws IOException {
+      URL url = new URL(location);
+      if( !"file".equals(url.getProtocol())) {
+         return null;
+      }
+      try {
+         return new File(url.toURI());
+      } catch (URISyntaxException e) {
+         return new File(url.getPath());
+      } catch (IllegalArgumentException e) {
+         return new File(url.getPath());
+      }
+   }
+
+   /**
+    * Finds a reader for an image stream, positioned to read the image's header and pixels on demand.
+    *
+    * @param iis stream of the encoded image.
+    * @param location URL of the image, used in error messages.
+    * @return a reader with the stream set as its input.
+    * @throws IOException if the image format is not supported.
+    */
+   private static ImageReader getReader(ImageInputStream iis, String location) throws IOException {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+      if( !readers.hasNext()) {
+         throw new IOException("Unsupported image format: " + location);
+      }
+      ImageReader reader = readers.next();
+      reader.setInput(iis, true, true);
+      return reader;
+   }
+
+   /**
+    * Reads the raw, still encoded, contents of a file.
+    *
+    * @param location URL of the file to read.
+    * @return every byte of the file.
+    * @throws IOException
+    */
+   public static byte[] readBytes(String location) throws IOException {
+      ByteBuffer mapped = map(location);
+      if(mapped != null) {
+         byte[] data = new byte[mapped.remaining()];
+         mapped.get(data);
+         return data;
+      }
+      InputStream in = new URL(location).openStream();
+      try {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         byte[] buf = new byte[65536];
+         int read;
+         while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+         }
+         return out.toByteArray();
+      } finally {
+         in.close();
       }
    }
 
@@ -0,0 +1,308 @@
+package com.nanoark.utilities;
+
+import static org.bytedeco.javacpp.lept.pixCopy;
+import static org.bytedeco.javacpp.lept.pixDestroy;
+import static org.bytedeco.javacpp.lept.pixGetHeight;
+import static org.bytedeco.javacpp.lept.pixGetWpl;
+import static org.bytedeco.javacpp.lept.pixReadMem;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.lept.PIX;
+
+/**
+ * Bounded cache of decoded images, so that a burst of OCR jobs against the same scan decodes it only once. Entries are
+ * Leptonica images in native memory, keyed by location and validated against the modification time and length of
+ * local files or the ETag or Last-Modified of HTTP images, and evicted least recently used first once their rasters
+ * exceed the cap. Remote images are revalidated at most once every nanoweather.imageCache.revalidateMillis, and images
+ * whose server reports neither header are decoded every time, since there would be no way to tell when they change.
+ * <p>
+ * Every caller gets its own copy of the raster, since Leptonica's reference counts are not thread safe. A cached image
+ * is only destroyed once it has been evicted and no caller is still copying it.
+ *
+ * @author Vino Sugunan
+ */
+public class ImageCache {
+   private static Logger                             log        = Log.logger();
+   /** Maximum size in bytes of all cached rasters. */
+   private static final long                         maxBytes   = Long.getLong("nanoweather.imageCache.maxBytes",
+                                                                   256L * 1024 * 1024);
+   /** Milliseconds a remote image is trusted before its headers are checked again. */
+   private static final long                         revalidate = Long.getLong(
+                                                                   "nanoweather.imageCache.revalidateMillis", 5000);
+   /** Cached images in least recently used order, also the lock guarding all other state. */
+   private static final LinkedHashMap<String, Entry> entries    = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+   /** Decodes in progress by location and version, so concurrent requests for one image wait on a single decode. */
+   private static final Map<String, Load>            loading    = new HashMap<String, Load>();
+   /** Size in bytes of all cached rasters. */
+   private static long                               bytes;
+
+   /**
+    * A decoded image along with the version of the file it was decoded from.
+    */
+   private static class Entry {
+      /** Modification time and length, ETag or Last-Modified of the file when it was decoded. */
+      public final String version;
+      /** Decoded image, owned by the cache. */
+      public final PIX    image;
+      /** Size in bytes of the raster. */
+      public final long   size;
+      /** When the version was last confirmed. */
+      public long         checked;
+      /** Callers currently copying the image. */
+      public int          users;
+      /** True once the entry has left the cache, or if it never fitted. */
+      public boolean      evicted;
+
+      public Entry(String version, PIX image) {
+         this.version = version;
+         this.image = image;
+         this.size = 4L * pixGetWpl(image) * pixGetHeight(image);
+         this.checked = System.currentTimeMillis();
+      }
+   }
+
+   /**
+    * A decode which other requests for the same image wait on.
+    */
+   private static class Load {
+      /** Requests waiting on this decode, each of which will hold the decoded entry. */
+      public int         waiters;
+      /** True once the decode has finished, successfully or not. */
+      public boolean     done;
+      /** Decoded entry, or null if the image could not be decoded. */
+      public Entry       entry;
+      /** Why the image could not be read, or null. */
+      public IOException error;
+   }
+
+   /**
+    * Gets a decoded image, decoding it only if it is not cached or the file has changed since it was cached.
+    *
+    * @param location URL of the image.
+    * @return a copy of the decoded image which the caller must destroy, or null if Leptonica could not decode it.
+    * @throws IOException if the image could not be read.
+    */
+   public static PIX get(String location) throws IOException {
+      File file = FileActions.getLocalFile(location);
+      Entry entry = null;
+      synchronized (entries) {
+         Entry cached = entries.get(location);
+         if(file == null && cached != null && System.currentTimeMillis() - cached.checked < revalidate) {
+            cached.users++ ;
+            entry = cached;
+         }
+      }
+      if(entry == null) {
+         String version = file != null ? file.lastModified() + ":" + file.length() : version(location);
+         if(version == null) {
+            return decode(location);
+         }
+         entry = load(location, version);
+         if(entry == null) {
+            return null;
+         }
+      }
+      try {
+         return pixCopy((PIX) null, entry.image);
+      } finally {
+         release(entry);
+      }
+   }
+
+   /**
+    * Removes an image from the cache.
+    *
+    * @param location URL of the image.
+    */
+   public static void invalidate(String location) {
+      synchronized (entries) {
+         Entry entry = entries.remove(location);
+         if(entry != null) {
+            evict(entry);
+         }
+      }
+   }
+
+   /**
+    * Gets a cached version of an image, or decodes it, waiting on any decode of the same version already running.
+    *
+    * @param location URL of the image.
+    * @param version current version of the file.
+    * @return the entry, held for the caller until {@link #release(Entry)}, or null if it could not be decoded.
+    * @throws IOException if the image could not be read.
+    */
+   private static Entry load(String location, String version) throws IOException {
+      String key = location + "#" + version;
+      Load load;
+      boolean owner = false;
+      synchronized (entries) {
+         Entry cached = entries.get(location);
+         if(cached != null && cached.version.equals(version)) {
+            cached.checked = System.currentTimeMillis();
+            cached.users++ ;
+            return cached;
+         }
+         load = loading.get(key);
+         if(load == null) {
+            load = new Load();
+            loading.put(key, load);
+            owner = true;
+         }
+         load.waiters++ ;
+      }
+      if(owner) {
+         PIX image = null;
+         IOException error = null;
+         try {
+            image = decode(location);
+         } catch (IOException e) {
+            error = e;
+         } finally {
+            synchronized (entries) {
+               if(image != null) {
+                  load.entry = new Entry(version, image);
+                  // Held for every waiter before any of them can release it.
+                  load.entry.users = load.waiters;
+                  put(location, load.entry);
+               }
+               load.error = error;
+               load.done = true;
+               loading.remove(key);
+               entries.notifyAll();
+            }
+         }
+      }
+      boolean interrupted = false;
+      synchronized (entries) {
+         while ( !load.done) {
+            try {
+               entries.wait();
+            } catch (InterruptedException e) {
+               // Keep waiting, since this request already holds the entry once it is decoded.
+               interrupted = true;
+            }
+         }
+      }
+      if(interrupted) {
+         Thread.currentThread().interrupt();
+      }
+      if(load.error != null) {
+         throw load.error;
+      }
+      return load.entry;
+   }
+
+   /**
+    * Lets go of an entry, destroying its image if it has been evicted and no one else holds it.
+    *
+    * @param entry entry held by the caller.
+    */
+   private static void release(Entry entry) {
+      synchronized (entries) {
+         entry.users-- ;
+         if(entry.evicted && entry.users == 0) {
+            pixDestroy(entry.image);
+         }
+      }
+   }
+
+   /**
+    * Adds an image, evicting least recently used images until the cache is within its cap. Images larger than the
+    * cap are not cached, and are destroyed once their waiters have copied them. Must be called holding the lock.
+    *
+    * @param location URL of the image.
+    * @param entry decoded image.
+    */
+   private static void put(String location, Entry entry) {
+      if(entry.size > maxBytes) {
+         log.fine("Image too large to cache: " + location + " (" + entry.size + " bytes)");
+         entry.evicted = true;
+         return;
+      }
+      Entry old = entries.put(location, entry);
+      if(old != null) {
+         evict(old);
+      }
+      bytes += entry.size;
+      Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+      while (bytes > maxBytes && eldest.hasNext()) {
+         Map.Entry<String, Entry> next = eldest.next();
+         eldest.remove();
+         evict(next.getValue());
+         log.fine("Evicted cached image: " + next.getKey());
+      }
+   }
+
+   /**
+    * Accounts for an entry which has left the cache, destroying its image unless a caller still holds it. Must be
+    * called holding the lock.
+    *
+    * @param entry entry removed from the cache.
+    */
+   private static void evict(Entry entry) {
+      bytes -= entry.size;
+      entry.evicted = true;
+      if(entry.users == 0) {
+         pixDestroy(entry.image);
+      }
+   }
+
+   /**
+    * Decodes an image with Leptonica. Local files are decoded straight from a memory mapping, without copying them
+    * onto the Java heap first.
+    *
+    * @param location URL of the image.
+    * @return the decoded image, or null if Leptonica could not decode it.
+    * @throws IOException if the image could not be read.
+    */
+   private static PIX decode(String location) throws IOException {
+      ByteBuffer mapped = FileActions.map(location);
+      PIX image;
+      if(mapped != null) {
+         image = pixReadMem(new BytePointer(mapped), mapped.limit());
+      } else {
+         byte[] data = FileActions.readBytes(location);
+         image = pixReadMem(data, data.length);
+      }
+      return image == null || image.isNull() ? null : image;
+   }
+
+   /**
+    * Finds the current version of a remote file without reading its contents.
+    *
+    * @param location URL of the file.
+    * @return ETag or Last-Modified of HTTP files, or null if the file is not served over HTTP or its server reports
+    *         neither.
+    * @throws IOException
+    */
+   private static String version(String location) throws IOException {
+      URLConnection connection = new URL(location).openConnection();
+      if( !(connection instanceof HttpURLConnection)) {
+         return null;
+      }
+      HttpURLConnection http = (HttpURLConnection) connection;
+      http.setRequestMethod("HEAD");
+      try {
+         String etag = http.getHeaderField("ETag");
+         if(etag != null) {
+            return etag;
+         }
+         long modified = http.getLastModified();
+         return modified > 0 ? "modified:" + modified : null;
+      } finally {
+         http.disconnect();
+      }
+   }
+}
@@ -0,0 +1,176 @@
+package com.nanoark.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import com.mongodb.DBObject;
+import com.nanoark.dao.ImageDAO;
+
+/**
+ * Reads newly added images in the background, so that a request adding an image returns as soon as a pending record
+ * is saved rather than waiting for the image to be fetched and probed. Pending records are durable, and
+ * {@link #resume()} queues those left behind when NanoWeather last stopped. Each image is claimed before it is probed,
+ * so an image resumed by several nodes is probed and called back once, and one left mid probe by a node which stopped
+ * is claimed again after nanoweather.ingest.probeLeaseMillis.
+ * <p>
+ * Callbacks are only requested at the origins listed, comma separated, by nanoweather.ingest.callbacks, for example
+ * <code>https://app.example.com,http://10.0.0.5:8080</code>. No callbacks are allowed when it is unset.
+ *
+ * @author Vino Sugunan
+ */
+public class ImageIngest {
+   private static Logger                log       = Log.logger();
+   /** Threads fetching and probing pending images. */
+   private static final ExecutorService workers   = Executors.newFixedThreadPool(Integer.getInteger(
+                                                     "nanoweather.ingest.threads", 4));
+   /** Identifies this node as the owner of the images it probes. */
+   private static final String          owner     = ManagementFactory.getRuntimeMXBean().getName();
+   /** Time after which an image whose probe has not finished may be claimed by another node. */
+   private static final long            lease     = Long.getLong("nanoweather.ingest.probeLeaseMillis", 600000);
+   /** Origins callbacks may be requested at. */
+   private static final List<URL>       callbacks = origins(System.getProperty("nanoweather.ingest.callbacks", ""));
+
+   /**
+    * Queues every image left pending, along with its callback, such as those which were still waiting to be probed
+    * when NanoWeather last stopped.
+    *
+    * @return number of pending images queued.
+    */
+   public static int resume() {
+      List<DBObject> pending = ImageDAO.getPending();
+      for (DBObject image : pending) {
+         Object callback = image.get("callback");
+         submit(image.get("_id").toString(), callback == null ? null : callback.toString());
+      }
+      log.info("Resumed " + pending.size() + " pending images");
+      return pending.size();
+   }
+
+   /**
+    * Queues a pending image to be probed, unless another node claims it first.
+    *
+    * @param image identifies the pending image.
+    * @param callback URL requested once the image has been probed, with image and status query parameters
+    *           appended, or null for no callback.
+    */
+   public static void submit(final String image, final String callback) {
+      workers.execute(new Runnable() {
+         @Override
+         public void run() {
+            // Another node may have resumed the same image, only the one which claims it probes and calls back.
+            if(ImageDAO.claimProbe(image, owner, lease) == null) {
+               log.info("Pending image " + image + " is already being probed");
+               return;
+            }
+            String status;
+            try {
+               status = ImageDAO.probe(image);
+            } catch (Exception e) {
+               log.severe(Log.getError(e));
+               status = "failed";
+            }
+            if(callback != null && !callback.isEmpty()) {
+               callBack(callback, image, status);
+            }
+         }
+      });
+      log.info("Queued pending image " + image);
+   }
+
+   /**
+    * Tells a client that its image has been probed.
+    *
+    * @param callback URL to request, which is skipped unless it is allowed by {@link #isAllowed(String)}.
+    * @param image identifies the probed image.
+    * @param status status the image was left in.
+    */
+   private static void callBack(String callback, String image, String status) {
+      if( !isAllowed(callback)) {
+         log.warning("Callback is not allowed for " + image + ": " + callback);
+         return;
+      }
+      try {
+         String url = callback + (callback.contains("?") ? "&" : "?") + "image=" + URLEncoder.encode(image, "UTF-8")
+            + "&status=" + status;
+         HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+         // A redirect could otherwise lead the callback away from the allowed origin.
+         connection.setInstanceFollowRedirects(false);
+         connection.setConnectTimeout(10000);
+         connection.setReadTimeout(10000);
+         InputStream in = connection.getInputStream();
+         in.close();
+         log.info("Called back " + callback + " for " + image + ": " + connection.getResponseCode());
+      } catch (IOException e) {
+         log.warning("Callback failed for " + image + " at " + callback + "\n" + Log.getError(e));
+      } catch (ClassCastException e) {
+         log.warning("Callback is not an HTTP URL for " + image + ": " + callback);
+      }
+   }
+
+   /**
+    * Checks whether a callback URL is an HTTP or HTTPS URL at one of the origins listed by
+    * nanoweather.ingest.callbacks.
+    *
+    * @param callback URL to check.
+    * @return true if the callback may be requested.
+    */
+   public static boolean isAllowed(String callback) {
+      URL url;
+      try {
+         url = new URL(callback);
+      } catch (MalformedURLException e) {
+         return false;
+      }
+      String protocol = url.getProtocol().toLowerCase();
+      if(( !protocol.equals("http") && !protocol.equals("https")) || url.getUserInfo() != null) {
+         return false;
+      }
+      for (URL origin : callbacks) {
+         if(origin.getProtocol().equalsIgnoreCase(protocol) && origin.getHost().equalsIgnoreCase(url.getHost())
+            && port(origin) == port(url)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Parses the origins callbacks may be requested at.
+    *
+    * @param list comma separated origins, such as <code>https://app.example.com</code>.
+    * @return the origins which could be parsed.
+    */
+   private static List<URL> origins(String list) {
+      List<URL> origins = new ArrayList<URL>();
+      for (String origin : list.split(",")) {
+         origin = origin.trim();
+         if(origin.isEmpty()) {
+            continue;
+         }
+         try {
+            origins.add(new URL(origin));
+         } catch (MalformedURLException e) {
+            log.warning("Ignoring callback origin " + origin + ": " + e.getMessage());
+         }
+      }
+      return origins;
+   }
+
+   /**
+    * @param url an HTTP or HTTPS URL.
+    * @return the port of the URL, or the default port of its protocol.
+    */
+   private static int port(URL url) {
+      return url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+   }
+}
@@ -0,0 +1,64 @@
+package com.nanoark.utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * Image input stream reading directly from a buffer, typically a memory mapped file, so that image readers seek and
+ * read within pages served by the OS page cache instead of copying the file through a stream cache.
+ *
+ * @author Vino Sugunan
+ */
+public class MappedImageInputStream extends ImageInputStreamImpl {
+   /** Contents of the image, read through a private view so the caller's position is untouched. */
+   private final ByteBuffer buffer;
+
+   /**
+    * @param buffer contents of the image, from its position to its limit.
+    */
+   public MappedImageInputStream(ByteBuffer buffer) {
+      this.buffer = buffer.slice();
+   }
+
+   @Override
+   public int read() throws IOException {
+      checkClosed();
+      bitOffset = 0;
+      if(streamPos >= buffer.limit()) {
+         return -1;
+      }
+      return buffer.get((int) streamPos++ ) & 0xff;
+   }
+
+   @Override
+   public int read(byte[] b, int off, int len) throws IOException {
+      checkClosed();
+      bitOffset = 0;
+      if(streamPos >= buffer.limit()) {
+         return -1;
+      }
+      len = (int) Math.min(len, buffer.limit() - streamPos);
+      ByteBuffer view = buffer.duplicate();
+      view.position((int) streamPos);
+      view.get(b, off, len);
+      streamPos += len;
+      return len;
+   }
+
+   @Override
+   public long length() {
+      return buffer.limit();
+   }
+
+   @Override
+   public boolean isCached() {
+      return true;
+   }
+
+   @Override
+   public boolean isCachedMemory() {
+      return true;
+   }
+}
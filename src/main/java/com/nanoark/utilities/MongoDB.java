@@ -23,14 +23,17 @@ public class MongoDB {
       try {
          MongoOptions options = new MongoOptions();
          options.autoConnectRetry = true;
-         options.connectionsPerHost = 40;
+         options.connectionsPerHost = Integer.getInteger("nanoweather.mongo.connections", 40);
+         // Requests beyond connectionsPerHost times this wait for a connection rather than failing.
+         options.threadsAllowedToBlockForConnectionMultiplier = Integer.getInteger("nanoweather.mongo.waitMultiplier",
+            5);
          options.connectTimeout = 60000;
          options.maxAutoConnectRetryTime = 120000;
          options.maxWaitTime = 120000;
          options.socketKeepAlive = true;
          options.socketTimeout = 600000;
          // connect to the database
-         mongo = new Mongo("localhost", options);
+         mongo = new Mongo(System.getProperty("nanoweather.mongo.host", "localhost"), options);
          // Use DB.
          db = mongo.getDB("nanoWeather");
       } catch (UnknownHostException e) {
@@ -0,0 +1,211 @@
+package com.nanoark.utilities;
+
+import static org.bytedeco.javacpp.lept.pixGetData;
+import static org.bytedeco.javacpp.lept.pixGetDepth;
+import static org.bytedeco.javacpp.lept.pixGetHeight;
+import static org.bytedeco.javacpp.lept.pixGetWidth;
+import static org.bytedeco.javacpp.lept.pixGetWpl;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.lept.PIX;
+import org.bytedeco.javacpp.tesseract.TessBaseAPI;
+
+import com.mongodb.DBObject;
+import com.nanoark.dao.OCRCacheDAO;
+
+/**
+ * Cache of OCR results keyed by an exact hash of the field raster together with everything else which affects
+ * recognition: engine version and language, preprocessing, thresholds and character set. Identical crops, such as
+ * pre-printed headers and stamps repeated across forms, are recognised once. Recent results are held in memory, least
+ * recently used first out, and every result is also stored in the ocrCache collection so that it survives restarts
+ * and is shared between nodes. Words and symbols are cached with their boxes relative to the field, and moved onto
+ * the field they are filled into. Fields recognised in place are hashed in place, without copying them out of the
+ * page.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRCache {
+   private static Logger                      log        = Log.logger();
+   /** Maximum number of results held in memory. */
+   private static final int                   maxSize    = Integer.getInteger("nanoweather.ocrCache.entries", 10000);
+   /** If false, results are neither looked up nor stored. */
+   private static final boolean               enabled    = !Boolean.getBoolean("nanoweather.ocrCache.disabled");
+   /** Engine version and language, part of every key. */
+   private static final String                engine     = TessBaseAPI.Version().getString() + "/"
+                                                            + TesseractPool.language;
+   /** Recent results in least recently used order, each held as its text, confidence, words and symbols. */
+   private static final Map<String, Object[]> entries    = new LinkedHashMap<String, Object[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Object[]> eldest) {
+         return size() > maxSize;
+      }
+   };
+   /** Number of lookups answered from memory. */
+   private static final AtomicLong            memoryHits = new AtomicLong();
+   /** Number of lookups answered from the ocrCache collection. */
+   private static final AtomicLong            storeHits  = new AtomicLong();
+   /** Number of lookups not answered. */
+   private static final AtomicLong            misses     = new AtomicLong();
+
+   /**
+    * Builds the key under which a field's result is cached.
+    *
+    * @param raster the field's pixels as they will be recognised.
+    * @param field the field, whose preprocessing, thresholds and character set are part of the key.
+    * @return hex encoded SHA-1 hash, or null if caching is disabled.
+    */
+   public static String key(PIX raster, OCRField field) {
+      return key(raster, 0, 0, pixGetWidth(raster), pixGetHeight(raster), field);
+   }
+
+   /**
+    * Builds the key under which a field's result is cached, hashing the field's region of a larger image in place.
+    * Only the region's own bits are hashed, shifted to the start of each row, so the key is the same as for a copy of
+    * the region.
+    *
+    * @param image image containing the field's pixels as they will be recognised.
+    * @param x left edge of the region in pixels.
+    * @param y top edge of the region in pixels.
+    * @param width width of the region in pixels.
+    * @param height height of the region in pixels.
+    * @param field the field, whose preprocessing, thresholds and character set are part of the key.
+    * @return hex encoded SHA-1 hash, or null if caching is disabled.
+    */
+   public static String key(PIX image, int x, int y, int width, int height, OCRField field) {
+      if( !enabled) {
+         return null;
+      }
+      try {
+         // Clip the region to the image, as pixClipRectangle does for copies.
+         if(x < 0) {
+            width += x;
+            x = 0;
+         }
+         if(y < 0) {
+            height += y;
+            y = 0;
+         }
+         width = Math.max(0, Math.min(width, pixGetWidth(image) - x));
+         height = Math.max(0, Math.min(height, pixGetHeight(image) - y));
+         MessageDigest digest = MessageDigest.getInstance("SHA-1");
+         int depth = pixGetDepth(image);
+         String config = engine + "|" + width + "x" + height + "x" + depth + "|" + field.prep + "|" + field.lowThresh
+            + "|" + field.highThresh + "|" + field.charSet;
+         digest.update(config.getBytes("UTF-8"));
+         int wpl = pixGetWpl(image);
+         long first = (long) x * depth;
+         long bits = (long) width * depth;
+         int shift = (int) (first & 31);
+         int words = (int) ((bits + 31) >>> 5);
+         int tail = (int) (bits & 31);
+         int[] row = new int[words + 1];
+         ByteBuffer out = ByteBuffer.allocate(4 * words);
+         IntPointer data = pixGetData(image);
+         for (int r = 0; r < height; r++ ) {
+            long start = (long) (y + r) * wpl + (first >>> 5);
+            int available = (int) Math.min(row.length, (long) (y + r + 1) * wpl - start);
+            data.position(start).get(row, 0, available);
+            Arrays.fill(row, available, row.length, 0);
+            out.clear();
+            for (int i = 0; i < words; i++ ) {
+               // Pixels are packed from the most significant bit of each word.
+               int word = shift == 0 ? row[i] : row[i] << shift | row[i + 1] >>> (32 - shift);
+               if(i == words - 1 && tail != 0) {
+                  word &= -1 << (32 - tail);
+               }
+               out.putInt(word);
+            }
+            digest.update(out.array());
+         }
+         StringBuilder hex = new StringBuilder();
+         for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+         }
+         return hex.toString();
+      } catch (NoSuchAlgorithmException e) {
+         log.severe(Log.getError(e));
+         return null;
+      } catch (UnsupportedEncodingException e) {
+         log.severe(Log.getError(e));
+         return null;
+      }
+   }
+
+   /**
+    * Fills in a field's text, confidence, words and symbols from the cache.
+    *
+    * @param key key built by {@link #key(PIX, OCRField)}, or null.
+    * @param field field to fill in.
+    * @return true if a cached result was found.
+    */
+   public static boolean fill(String key, OCRField field) {
+      if(key == null) {
+         return false;
+      }
+      Object[] result;
+      synchronized (entries) {
+         result = entries.get(key);
+      }
+      if(result != null) {
+         memoryHits.incrementAndGet();
+      } else {
+         DBObject stored = OCRCacheDAO.get(key);
+         if(stored == null) {
+            misses.incrementAndGet();
+            return false;
+         }
+         storeHits.incrementAndGet();
+         result = new Object[] {stored.get("ocrVal") + "", Integer.parseInt(stored.get("confidence") + ""),
+            OCRElements.fromDBObject((DBObject) stored.get("words")),
+            OCRElements.fromDBObject((DBObject) stored.get("symbols"))};
+         synchronized (entries) {
+            entries.put(key, result);
+         }
+      }
+      field.ocrVal = (String) result[0];
+      field.confidence = (Integer) result[1];
+      field.words = result[2] == null ? null : ((OCRElements) result[2]).offset(field.x, field.y);
+      field.symbols = result[3] == null ? null : ((OCRElements) result[3]).offset(field.x, field.y);
+      return true;
+   }
+
+   /**
+    * Caches a field's text, confidence, words and symbols, with boxes made relative to the field.
+    *
+    * @param key key built by {@link #key(PIX, OCRField)}, or null.
+    * @param field recognised field.
+    */
+   public static void put(String key, OCRField field) {
+      if(key == null) {
+         return;
+      }
+      OCRElements words = field.words == null ? null : field.words.offset( -field.x, -field.y);
+      OCRElements symbols = field.symbols == null ? null : field.symbols.offset( -field.x, -field.y);
+      synchronized (entries) {
+         entries.put(key, new Object[] {field.ocrVal, field.confidence, words, symbols});
+      }
+      OCRCacheDAO.save(key, field.ocrVal, field.confidence, words, symbols);
+   }
+
+   /**
+    * @return lookups answered from memory, from the collection, and not at all since startup.
+    */
+   public static String getStats() {
+      int size;
+      synchronized (entries) {
+         size = entries.size();
+      }
+      return "memoryHits=" + memoryHits.get() + ", storeHits=" + storeHits.get() + ", misses=" + misses.get()
+         + ", entries=" + size;
+   }
+}
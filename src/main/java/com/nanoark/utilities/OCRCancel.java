@@ -0,0 +1,185 @@
+package com.nanoark.utilities;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.tesseract.CANCEL_FUNC;
+import org.bytedeco.javacpp.tesseract.ETEXT_DESC;
+import org.bytedeco.javacpp.tesseract.TessBaseAPI;
+
+/**
+ * Deadline and cancellation flags for one OCR run over an image. Every recognition made on the run's behalf is given a
+ * Tesseract progress monitor whose deadline is the sooner of {@link #fieldTimeout} and the end of the run, and whose
+ * cancel hook aborts it as soon as the run or its field is cancelled, so a pathological field cannot hold an engine
+ * indefinitely. Runs are registered by image while they are in progress so that they can be cancelled from any thread
+ * in this process.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRCancel {
+   /** Longest in milliseconds a single recognition may run. */
+   public static final int                          fieldTimeout = Integer.getInteger(
+                                                                    "nanoweather.ocr.fieldTimeoutMillis", 10000);
+   /** Longest in milliseconds a whole run may take. */
+   public static final long                         jobTimeout   = Long.getLong("nanoweather.ocr.jobTimeoutMillis",
+                                                                    300000);
+   /** Error given to fields whose recognition was cancelled, see {@link OCRField#error}. */
+   public static final String                       cancelled    = "cancelled";
+   /** Runs in progress in this process, by image. */
+   private static final Map<String, Set<OCRCancel>> running      = new HashMap<String, Set<OCRCancel>>();
+   /** Run and field the current thread is recognising, read by the cancel hook. */
+   private static final ThreadLocal<Object[]>       current      = new ThreadLocal<Object[]>();
+   /** Cancel hook shared by every monitor, since native callbacks are a limited resource. */
+   private static final CANCEL_FUNC                 hook         = new Hook();
+   /** Image this run covers. */
+   private final String                             image;
+   /** Time in milliseconds after which this run is abandoned. */
+   private final long                               expires;
+   /** Set once the whole run is cancelled. */
+   private volatile boolean                         all;
+   /** Fields of this run which have been cancelled. */
+   private final Set<String>                        fields       = Collections.synchronizedSet(new HashSet<String>());
+
+   /**
+    * Asks Tesseract to stop once the run or field being recognised by the calling thread is cancelled or out of time.
+    * Tesseract calls it on the recognising thread.
+    */
+   private static class Hook extends CANCEL_FUNC {
+      @Override
+      public boolean call(Pointer cancelThis, int words) {
+         Object[] recognising = current.get();
+         if(recognising == null) {
+            return false;
+         }
+         OCRCancel run = (OCRCancel) recognising[0];
+         return run.isExpired() || run.isCancelled((String) recognising[1]);
+      }
+   }
+
+   /**
+    * @param image image this run covers.
+    */
+   private OCRCancel(String image) {
+      this.image = image;
+      this.expires = System.currentTimeMillis() + jobTimeout;
+   }
+
+   /**
+    * Registers a run over an image, which must be ended with {@link #finish()}.
+    *
+    * @param image identifies the image.
+    * @return flags of the new run.
+    */
+   public static OCRCancel start(String image) {
+      OCRCancel run = new OCRCancel(image);
+      synchronized (running) {
+         Set<OCRCancel> runs = running.get(image);
+         if(runs == null) {
+            runs = new HashSet<OCRCancel>();
+            running.put(image, runs);
+         }
+         runs.add(run);
+      }
+      return run;
+   }
+
+   /**
+    * Unregisters this run.
+    */
+   public void finish() {
+      synchronized (running) {
+         Set<OCRCancel> runs = running.get(image);
+         if(runs != null) {
+            runs.remove(this);
+            if(runs.isEmpty()) {
+               running.remove(image);
+            }
+         }
+      }
+   }
+
+   /**
+    * Cancels every run over an image in progress in this process.
+    *
+    * @param image identifies the image.
+    * @param field field to cancel, or null to cancel the whole run.
+    * @return number of runs cancelled.
+    */
+   public static int cancel(String image, String field) {
+      synchronized (running) {
+         Set<OCRCancel> runs = running.get(image);
+         if(runs == null) {
+            return 0;
+         }
+         for (OCRCancel run : runs) {
+            run.cancel(field);
+         }
+         return runs.size();
+      }
+   }
+
+   /**
+    * Cancels this run or one of its fields, aborting any recognition of it in progress.
+    *
+    * @param field field to cancel, or null to cancel the whole run.
+    */
+   public void cancel(String field) {
+      if(field == null) {
+         all = true;
+      } else {
+         fields.add(field);
+      }
+   }
+
+   /**
+    * @param field a field of this run, or null for the run as a whole.
+    * @return true if the field or the whole run has been cancelled.
+    */
+   public boolean isCancelled(String field) {
+      return all || field != null && fields.contains(field);
+   }
+
+   /**
+    * @return true once this run has taken longer than {@link #jobTimeout}.
+    */
+   public boolean isExpired() {
+      return System.currentTimeMillis() > expires;
+   }
+
+   /**
+    * Recognises an engine's current image on behalf of a field of this run, aborting if the deadline passes or the
+    * field is cancelled.
+    *
+    * @param api engine with an image set.
+    * @param field field being recognised.
+    * @return null if recognition completed, otherwise why it was aborted.
+    */
+   public String recognise(TessBaseAPI api, String field) {
+      if(isCancelled(field)) {
+         return cancelled;
+      }
+      long remaining = expires - System.currentTimeMillis();
+      if(remaining <= 0) {
+         return "timed out after " + jobTimeout + "ms";
+      }
+      int deadline = (int) Math.min(fieldTimeout, remaining);
+      long start = System.currentTimeMillis();
+      ETEXT_DESC monitor = new ETEXT_DESC();
+      current.set(new Object[] {this, field});
+      try {
+         monitor.cancel(hook);
+         monitor.set_deadline_msecs(deadline);
+         if(api.Recognize(monitor) == 0) {
+            return null;
+         }
+         return isCancelled(field) ? cancelled : "timed out after " + (System.currentTimeMillis() - start) + "ms";
+      } finally {
+         current.remove();
+         monitor.deallocate();
+      }
+   }
+}
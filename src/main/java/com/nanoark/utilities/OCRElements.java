@@ -0,0 +1,132 @@
+package com.nanoark.utilities;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Words or symbols recognised within a field, held in parallel arrays rather than one object per element so that they
+ * can be stored compactly. Boxes are four consecutive integers per element, left, top, right and bottom, in pixels
+ * of the original image.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRElements {
+   /** Number of elements. */
+   private int      count;
+   /** Recognised text of each element. */
+   private String[] text       = new String[16];
+   /** Confidence of each element, 0 to 100. */
+   private int[]    confidence = new int[16];
+   /** Bounding box of each element. */
+   private int[]    boxes      = new int[64];
+
+   /**
+    * Adds an element.
+    *
+    * @param text recognised text.
+    * @param confidence confidence, 0 to 100.
+    * @param left left edge in pixels.
+    * @param top top edge in pixels.
+    * @param right right edge in pixels, exclusive.
+    * @param bottom bottom edge in pixels, exclusive.
+    */
+   public void add(String text, int confidence, int left, int top, int right, int bottom) {
+      if(count == this.text.length) {
+         this.text = Arrays.copyOf(this.text, 2 * count);
+         this.confidence = Arrays.copyOf(this.confidence, 2 * count);
+         boxes = Arrays.copyOf(boxes, 8 * count);
+      }
+      this.text[count] = text;
+      this.confidence[count] = confidence;
+      boxes[4 * count] = left;
+      boxes[4 * count + 1] = top;
+      boxes[4 * count + 2] = right;
+      boxes[4 * count + 3] = bottom;
+      count++ ;
+   }
+
+   /**
+    * @return number of elements.
+    */
+   public int size() {
+      return count;
+   }
+
+   /**
+    * @return recognised text of each element.
+    */
+   public String[] getText() {
+      return Arrays.copyOf(text, count);
+   }
+
+   /**
+    * @return confidence of each element.
+    */
+   public int[] getConfidence() {
+      return Arrays.copyOf(confidence, count);
+   }
+
+   /**
+    * @return left, top, right and bottom of each element's bounding box in turn.
+    */
+   public int[] getBoxes() {
+      return Arrays.copyOf(boxes, 4 * count);
+   }
+
+   /**
+    * @param dx added to horizontal coordinates.
+    * @param dy added to vertical coordinates.
+    * @return a copy of these elements with every box moved by the given offset.
+    */
+   public OCRElements offset(int dx, int dy) {
+      OCRElements moved = new OCRElements();
+      moved.count = count;
+      moved.text = Arrays.copyOf(text, Math.max(count, 1));
+      moved.confidence = Arrays.copyOf(confidence, Math.max(count, 1));
+      moved.boxes = Arrays.copyOf(boxes, Math.max(4 * count, 4));
+      for (int i = 0; i < 4 * count; i += 2) {
+         moved.boxes[i] += dx;
+         moved.boxes[i + 1] += dy;
+      }
+      return moved;
+   }
+
+   /**
+    * Builds the compact form in which elements are stored: parallel text and conf arrays, and a box array holding
+    * left, top, right and bottom of each element in turn.
+    *
+    * @return document holding these elements.
+    */
+   public BasicDBObject toDBObject() {
+      BasicDBObject doc = new BasicDBObject("text", getText());
+      doc.append("conf", getConfidence());
+      doc.append("box", getBoxes());
+      return doc;
+   }
+
+   /**
+    * Reads elements stored by {@link #toDBObject()}.
+    *
+    * @param doc stored document, or null.
+    * @return the stored elements, or null if none were stored.
+    */
+   @SuppressWarnings("unchecked")
+   public static OCRElements fromDBObject(DBObject doc) {
+      if(doc == null) {
+         return null;
+      }
+      List<Object> text = (List<Object>) doc.get("text");
+      List<Object> conf = (List<Object>) doc.get("conf");
+      List<Object> box = (List<Object>) doc.get("box");
+      OCRElements elements = new OCRElements();
+      for (int i = 0; i < text.size(); i++ ) {
+         elements.add(text.get(i) + "", ((Number) conf.get(i)).intValue(), ((Number) box.get(4 * i)).intValue(),
+            ((Number) box.get(4 * i + 1)).intValue(), ((Number) box.get(4 * i + 2)).intValue(),
+            ((Number) box.get(4 * i + 3)).intValue());
+      }
+      return elements;
+   }
+}
@@ -0,0 +1,54 @@
+package com.nanoark.utilities;
+
+/**
+ * Describes a single field region to be recognised within an image, along with the result of the OCR job run on it.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRField {
+   /** Identifier of this field within its image. */
+   public final String field;
+   /** The distance in pixels of this field from the left edge. */
+   public final int    x;
+   /** The distance in pixels of this field from the top edge. */
+   public final int    y;
+   /** Field width in pixels. */
+   public final int    width;
+   /** Field height in pixels. */
+   public final int    height;
+   /** Confidence above which this field is considered high accuracy, escalation stops once it is exceeded. */
+   public int          highThresh = 100;
+   /** Confidence below which this field is considered low accuracy and is escalated, -1 to never escalate. */
+   public int          lowThresh  = -1;
+   /** Characters this field may contain, as a list of the characters themselves, null or empty for any. */
+   public String       charSet;
+   /** Leptonica preprocessing steps run on this field before recognition, see {@link Preprocess}, null for none. */
+   public String       prep;
+   /** Text recognised within this field, null until OCR has run. */
+   public String       ocrVal;
+   /** Mean confidence of the recognised text, -1 until OCR has run. */
+   public int          confidence = -1;
+   /** Words recognised within this field, null until OCR has run. */
+   public OCRElements  words;
+   /** Symbols recognised within this field, null until OCR has run. */
+   public OCRElements  symbols;
+   /** Why recognition of this field was abandoned, null if it completed or has not run. */
+   public String       error;
+
+   /**
+    * Describes a field region to be recognised.
+    *
+    * @param field identifier of this field within its image.
+    * @param x the distance in pixels of this field from the left edge.
+    * @param y the distance in pixels of this field from the top edge.
+    * @param width field width in pixels.
+    * @param height field height in pixels.
+    */
+   public OCRField(String field, int x, int y, int width, int height) {
+      this.field = field;
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+   }
+}
@@ -0,0 +1,145 @@
+package com.nanoark.utilities;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.mongodb.DBObject;
+import com.nanoark.dao.OCRJobDAO;
+
+/**
+ * Schedules the OCR jobs claimed by this process's workers across priority lanes, so that interactive requests are
+ * not starved by bulk work. Lanes are served in proportion to their weights by stride scheduling: each claim advances
+ * its lane's pass by the inverse of the lane's weight, and workers try lanes in order of lowest pass. A lane which has
+ * been idle rejoins at the current pass rather than bursting ahead. Each lane also has a cap on the number of its jobs
+ * this process runs at once, and a histogram of the time from queueing to completion of its jobs.
+ * <p>
+ * Weights and caps are set per lane with nanoweather.ocr.lane.&lt;lane&gt;.weight and nanoweather.ocr.lane.&lt;lane&gt;.max,
+ * defaulting to weights of 6, 3 and 1, and caps of every worker for interactive and normal jobs and half the workers
+ * for bulk jobs.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRLanes {
+   /** Upper bounds in milliseconds of each latency bucket, the last bucket is unbounded. */
+   private static final long[]             bounds  = {100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 300000};
+   /** Relative share of claims each lane receives while all lanes have work. */
+   private static final int[]              weights = new int[OCRJobDAO.lanes.length];
+   /** Most jobs of each lane this process runs at once. */
+   private static final int[]              caps    = new int[OCRJobDAO.lanes.length];
+   /** Jobs of each lane this process is running. */
+   private static final AtomicIntegerArray running = new AtomicIntegerArray(OCRJobDAO.lanes.length);
+   /** Pass of each lane, the lane with the lowest pass is tried first. */
+   private static final double[]           pass    = new double[OCRJobDAO.lanes.length];
+   /** Pass at which the last job was claimed. */
+   private static double                   virtual;
+   /** Completed jobs in each latency bucket, bounds.length + 1 buckets per lane. */
+   private static final AtomicLongArray    latency = new AtomicLongArray(OCRJobDAO.lanes.length * (bounds.length + 1));
+
+   static {
+      int[] defaults = {6, 3, 1};
+      for (int lane = 0; lane < weights.length; lane++ ) {
+         weights[lane] = Math.max(1, Integer.getInteger("nanoweather.ocr.lane." + OCRJobDAO.lanes[lane] + ".weight",
+            defaults[lane]));
+      }
+      init(Integer.getInteger("nanoweather.ocr.workers", 2));
+   }
+
+   /**
+    * Sets the default caps for the number of workers this process runs.
+    *
+    * @param workers number of jobs this process runs at once.
+    */
+   public static void init(int workers) {
+      int[] defaults = {workers, workers, Math.max(1, workers / 2)};
+      for (int lane = 0; lane < caps.length; lane++ ) {
+         caps[lane] = Integer.getInteger("nanoweather.ocr.lane." + OCRJobDAO.lanes[lane] + ".max", defaults[lane]);
+      }
+   }
+
+   /**
+    * Claims the next job for a worker, trying lanes in order of lowest pass and skipping lanes at their cap.
+    *
+    * @param owner identifies the claiming worker.
+    * @param leaseMillis how long the job is held before other workers may claim it.
+    * @return the claimed job, which must be handed to {@link #finished(DBObject, boolean)}, or null if none is
+    *         available.
+    */
+   public static DBObject claim(String owner, long leaseMillis) {
+      Integer[] order = new Integer[pass.length];
+      synchronized (pass) {
+         for (int i = 0; i < order.length; i++ ) {
+            order[i] = i;
+         }
+         // Insertion sort of three lanes by pass, ties going to the higher priority lane.
+         for (int i = 1; i < order.length; i++ ) {
+            for (int j = i; j > 0 && pass[order[j]] < pass[order[j - 1]]; j-- ) {
+               Integer swap = order[j];
+               order[j] = order[j - 1];
+               order[j - 1] = swap;
+            }
+         }
+      }
+      for (int lane : order) {
+         if(running.incrementAndGet(lane) > caps[lane]) {
+            running.decrementAndGet(lane);
+            continue;
+         }
+         DBObject job = null;
+         try {
+            job = OCRJobDAO.claim(owner, leaseMillis, OCRJobDAO.lanes[lane]);
+         } finally {
+            // Release the place unless a job now holds it, including when the claim failed.
+            if(job == null) {
+               running.decrementAndGet(lane);
+            }
+         }
+         if(job != null) {
+            synchronized (pass) {
+               pass[lane] = Math.max(pass[lane], virtual);
+               virtual = pass[lane];
+               pass[lane] += 1.0 / weights[lane];
+            }
+            return job;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Releases a claimed job's place in its lane, recording its latency if it completed.
+    *
+    * @param job job returned by {@link #claim(String, long)}.
+    * @param done true if the job completed, rather than failed.
+    */
+   public static void finished(DBObject job, boolean done) {
+      int lane = OCRJobDAO.getLane(job);
+      running.decrementAndGet(lane);
+      if(done && job.get("created") instanceof Date) {
+         long millis = System.currentTimeMillis() - ((Date) job.get("created")).getTime();
+         int bucket = 0;
+         while (bucket < bounds.length && millis > bounds[bucket]) {
+            bucket++ ;
+         }
+         latency.incrementAndGet(lane * (bounds.length + 1) + bucket);
+      }
+   }
+
+   /**
+    * @return for each lane, its weight, cap and jobs running in this process, and a histogram of the time from
+    *         queueing to completion of the jobs this process completed.
+    */
+   public static String getStats() {
+      StringBuilder stats = new StringBuilder();
+      for (int lane = 0; lane < weights.length; lane++ ) {
+         stats.append(OCRJobDAO.lanes[lane]).append(": weight=").append(weights[lane]);
+         stats.append(", max=").append(caps[lane]).append(", running=").append(running.get(lane)).append("\n");
+         for (int bucket = 0; bucket <= bounds.length; bucket++ ) {
+            stats.append(bucket < bounds.length ? "\t<=" + bounds[bucket] + "ms: " : "\t>" + bounds[bounds.length - 1]
+               + "ms: ");
+            stats.append(latency.get(lane * (bounds.length + 1) + bucket)).append("\n");
+         }
+      }
+      return stats.toString();
+   }
+}
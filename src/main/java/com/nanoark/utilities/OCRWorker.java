@@ -0,0 +1,237 @@
+package com.nanoark.utilities;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.mongodb.DBObject;
+import com.nanoark.dao.ImageFieldDAO;
+import com.nanoark.dao.OCRJobDAO;
+import com.nanoark.dao.OCRWorkerDAO;
+
+/**
+ * Worker which claims OCR jobs from the ocrJob collection and runs them until stopped. Any number of processes, on any
+ * number of nodes, may run workers against the same database. Each process records a heartbeat in the ocrWorker
+ * collection and renews the leases of the jobs its workers are running at the same time; jobs held by a process
+ * which dies are claimed again once their lease expires, so pending work resumes whenever workers start. Jobs are
+ * claimed across priority lanes by {@link OCRLanes}. Cancellations recorded on a running job are picked up by the
+ * heartbeat and abort the job's recognitions, as does losing its lease.
+ *
+ * @author Vino Sugunan
+ */
+public class OCRWorker implements Runnable {
+   private static Logger                   log             = Log.logger();
+   /** How long a claimed job is held without being renewed before other workers may claim it. */
+   public static final long                leaseMillis     = Long.getLong("nanoweather.ocr.leaseMillis", 60000);
+   /** How often heartbeats are recorded and leases renewed, well within the lease. */
+   public static final long                heartbeatMillis = Long.getLong("nanoweather.ocr.heartbeatMillis",
+                                                               leaseMillis / 4);
+   /** How long an idle worker waits before looking for jobs again. */
+   private static final long               pollMillis      = Long.getLong("nanoweather.ocr.pollMillis", 1000);
+   /** Identifies this process among all workers sharing the queue. */
+   public static final String              node            = ManagementFactory.getRuntimeMXBean().getName();
+   /** Threads running the workers started in this process. */
+   private static ExecutorService          workers;
+   /** Thread recording heartbeats and renewing leases. */
+   private static ScheduledExecutorService heartbeat;
+   /** Workers started in this process, copied on write since the heartbeat iterates it while stop() clears it. */
+   private static List<OCRWorker>          started         = new CopyOnWriteArrayList<OCRWorker>();
+   /** Identifies this worker when claiming jobs. */
+   private final String                    owner;
+   /** Set once this worker should stop claiming jobs. */
+   private volatile boolean                stopped;
+   /** Job this worker is running, or null while idle. */
+   private volatile DBObject               current;
+   /** Deadline and cancellation flags of the job this worker is running, or null while idle. */
+   private volatile OCRCancel              run;
+
+   /**
+    * @param owner identifies this worker when claiming jobs.
+    */
+   public OCRWorker(String owner) {
+      this.owner = owner;
+   }
+
+   /**
+    * Starts workers in this process, along with its heartbeat.
+    *
+    * @param count number of jobs run at once by this process, 0 to run none.
+    */
+   public static synchronized void start(int count) {
+      if(workers != null) {
+         return;
+      }
+      if(count <= 0) {
+         log.info("OCR workers disabled on " + node);
+         return;
+      }
+      OCRLanes.init(count);
+      workers = Executors.newFixedThreadPool(count);
+      for (int i = 0; i < count; i++ ) {
+         OCRWorker worker = new OCRWorker(node + "#" + i);
+         started.add(worker);
+         workers.execute(worker);
+      }
+      heartbeat = Executors.newSingleThreadScheduledExecutor();
+      heartbeat.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            beat();
+         }
+      }, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+      log.info("Started " + count + " OCR workers on " + node);
+   }
+
+   /**
+    * Stops the workers started in this process, interrupting any jobs they are running. Interrupted jobs are claimed
+    * again once their lease expires.
+    */
+   public static synchronized void stop() {
+      if(workers == null) {
+         return;
+      }
+      for (OCRWorker worker : started) {
+         worker.stopped = true;
+      }
+      heartbeat.shutdownNow();
+      workers.shutdownNow();
+      try {
+         workers.awaitTermination(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      try {
+         OCRWorkerDAO.remove(node);
+      } catch (Exception e) {
+         log.warning(Log.getError(e));
+      }
+      started.clear();
+      workers = null;
+      heartbeat = null;
+      log.info("Stopped OCR workers on " + node);
+   }
+
+   /**
+    * Records this process's heartbeat, renews the leases of the jobs its workers are running and buries jobs whose
+    * workers died on their last attempt.
+    */
+   private static void beat() {
+      try {
+         int running = 0;
+         for (OCRWorker worker : started) {
+            DBObject job = worker.current;
+            OCRCancel run = worker.run;
+            if(job != null) {
+               running++ ;
+               DBObject renewed = OCRJobDAO.renew(job, worker.owner, leaseMillis);
+               if(renewed == null) {
+                  log.warning("Lost lease on OCR job " + job.get("_id") + " held by " + worker.owner);
+                  // Another worker has the job now, so any further work on it here is wasted.
+                  if(run != null) {
+                     run.cancel(null);
+                  }
+               } else if(run != null) {
+                  cancel(run, renewed);
+               }
+            }
+         }
+         OCRWorkerDAO.heartbeat(node, started.size(), running);
+         OCRJobDAO.buryExpired();
+      } catch (Exception e) {
+         // A missed heartbeat is retried on the next one, the lease outlasts several.
+         log.warning(Log.getError(e));
+      }
+   }
+
+   /**
+    * Applies the cancellations recorded on a job to its run.
+    *
+    * @param run deadline and cancellation flags of the job's run.
+    * @param job the job as stored.
+    */
+   @SuppressWarnings("unchecked")
+   private static void cancel(OCRCancel run, DBObject job) {
+      if(Boolean.TRUE.equals(job.get("cancel"))) {
+         run.cancel(null);
+      }
+      if(job.get("cancelledFields") != null) {
+         for (Object field : (List<Object>) job.get("cancelledFields")) {
+            run.cancel(field.toString());
+         }
+      }
+   }
+
+   @Override
+   public void run() {
+      while ( !stopped && !Thread.currentThread().isInterrupted()) {
+         try {
+            DBObject job = OCRLanes.claim(owner, leaseMillis);
+            if(job == null) {
+               Thread.sleep(pollMillis);
+            } else {
+               current = job;
+               boolean done = false;
+               try {
+                  done = process(job);
+               } finally {
+                  current = null;
+                  OCRLanes.finished(job, done);
+               }
+            }
+         } catch (InterruptedException e) {
+            return;
+         } catch (Exception e) {
+            // Usually a lost database connection, back off rather than spin.
+            log.severe(Log.getError(e));
+            try {
+               Thread.sleep(pollMillis);
+            } catch (InterruptedException ie) {
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * Runs a claimed job, recording whether it succeeded, failed or was cancelled.
+    *
+    * @param job the claimed job.
+    * @return true if the job completed.
+    */
+   @SuppressWarnings("unchecked")
+   private boolean process(DBObject job) {
+      String image = job.get("image").toString();
+      List<String> fields = null;
+      if(job.get("fields") != null) {
+         fields = new ArrayList<String>();
+         for (Object field : (List<Object>) job.get("fields")) {
+            fields.add(field.toString());
+         }
+      }
+      OCRCancel run = OCRCancel.start(image);
+      cancel(run, job);
+      this.run = run;
+      try {
+         ImageFieldDAO.ocrImage(image, fields, run);
+         OCRJobDAO.complete(job, owner);
+         return true;
+      } catch (CancellationException e) {
+         OCRJobDAO.cancelled(job, owner);
+         return false;
+      } catch (Exception e) {
+         log.warning(Log.getError(e));
+         OCRJobDAO.fail(job, owner, e.toString());
+         return false;
+      } finally {
+         this.run = null;
+         run.finish();
+      }
+   }
+}
@@ -0,0 +1,244 @@
+package com.nanoark.utilities;
+
+import static org.bytedeco.javacpp.lept.L_SELECT_IF_EITHER;
+import static org.bytedeco.javacpp.lept.L_SELECT_IF_GTE;
+import static org.bytedeco.javacpp.lept.boxaDestroy;
+import static org.bytedeco.javacpp.lept.boxaGetBoxGeometry;
+import static org.bytedeco.javacpp.lept.boxaGetCount;
+import static org.bytedeco.javacpp.lept.pixClone;
+import static org.bytedeco.javacpp.lept.pixConnCompBB;
+import static org.bytedeco.javacpp.lept.pixConvertTo8;
+import static org.bytedeco.javacpp.lept.pixDeskew;
+import static org.bytedeco.javacpp.lept.pixDestroy;
+import static org.bytedeco.javacpp.lept.pixGetDepth;
+import static org.bytedeco.javacpp.lept.pixGetHeight;
+import static org.bytedeco.javacpp.lept.pixGetWidth;
+import static org.bytedeco.javacpp.lept.pixMedianFilter;
+import static org.bytedeco.javacpp.lept.pixOtsuAdaptiveThreshold;
+import static org.bytedeco.javacpp.lept.pixSauvolaBinarize;
+import static org.bytedeco.javacpp.lept.pixScale;
+import static org.bytedeco.javacpp.lept.pixSelectBySize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.lept.BOXA;
+import org.bytedeco.javacpp.lept.PIX;
+
+/**
+ * Preprocessing pipeline run on images in native memory with Leptonica, before they are passed to Tesseract. A
+ * pipeline is a comma separated list of steps, each optionally followed by a colon and an argument, applied in order:
+ * <ul>
+ * <li><code>gray</code> converts to 8 bit grayscale.</li>
+ * <li><code>otsu</code> binarises with Otsu's global threshold.</li>
+ * <li><code>sauvola[:window]</code> binarises with Sauvola's local threshold over a window of the given half size,
+ * default 15, narrowed to fit small images. Images too small for any window fall back to Otsu's threshold.</li>
+ * <li><code>deskew</code> straightens text lines.</li>
+ * <li><code>scale:factor</code> scales both dimensions by the given factor.</li>
+ * <li><code>upscale[:height]</code> scales up text shorter than the given height in pixels, default
+ * {@link #textHeight}, see {@link #upscale(PIX, int)}.</li>
+ * <li><code>despeckle[:size]</code> removes specks smaller than the given size in pixels from binary images, default
+ * 3, or applies a 3x3 median filter to other images.</li>
+ * </ul>
+ * For example <code>gray,sauvola:20,deskew,despeckle</code>.
+ *
+ * @author Vino Sugunan
+ */
+public class Preprocess {
+   private static Logger         log        = Log.logger();
+   /** Text height in pixels which the upscale step scales small text up to by default. */
+   public static final int       textHeight = Integer.getInteger("nanoweather.ocr.textHeight", 30);
+   /** Largest factor small text is scaled up by. */
+   private static final float    maxUpscale = 4;
+   /** Steps understood by {@link #apply(PIX, String)}. */
+   private static final String[] names      = {"gray", "otsu", "sauvola", "deskew", "scale", "upscale", "despeckle"};
+
+   /**
+    * Splits a pipeline into its steps, checking each step's name and argument.
+    *
+    * @param steps comma separated steps, null or empty for none.
+    * @return name and argument, or null argument, of each step.
+    * @throws IllegalArgumentException if a step is not recognised or its argument is not a number.
+    */
+   public static List<String[]> parse(String steps) {
+      List<String[]> parsed = new ArrayList<String[]>();
+      if(steps == null || steps.trim().isEmpty()) {
+         return parsed;
+      }
+      for (String step : steps.split(",")) {
+         String[] parts = step.trim().split(":", 2);
+         String name = parts[0].toLowerCase();
+         String arg = parts.length > 1 ? parts[1].trim() : null;
+         boolean known = false;
+         for (String n : names) {
+            known |= n.equals(name);
+         }
+         if( !known) {
+            throw new IllegalArgumentException("Unknown preprocessing step: " + step);
+         }
+         if("scale".equals(name) && arg == null) {
+            throw new IllegalArgumentException("Scale requires a factor: " + step);
+         }
+         if(arg != null) {
+            try {
+               if(Float.parseFloat(arg) <= 0) {
+                  throw new IllegalArgumentException("Preprocessing argument must be positive: " + step);
+               }
+            } catch (NumberFormatException e) {
+               throw new IllegalArgumentException("Preprocessing argument is not a number: " + step);
+            }
+         }
+         parsed.add(new String[] {name, arg});
+      }
+      return parsed;
+   }
+
+   /**
+    * Checks whether a pipeline rotates the image, in which case boxes found on the result do not map back onto the
+    * original by scaling alone.
+    *
+    * @param steps comma separated steps, null or empty for none.
+    * @return true if the pipeline deskews the image.
+    * @throws IllegalArgumentException if the pipeline is not valid.
+    */
+   public static boolean rotates(String steps) {
+      for (String[] step : parse(steps)) {
+         if("deskew".equals(step[0])) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Runs a pipeline over an image. The original image is left untouched, and intermediate images are destroyed as
+    * soon as the next step has run.
+    *
+    * @param pix image to preprocess.
+    * @param steps comma separated steps, null or empty for none.
+    * @return the preprocessed image, which the caller must destroy.
+    * @throws IllegalArgumentException if the pipeline is not valid.
+    * @throws IllegalStateException if Leptonica could not run a step.
+    */
+   public static PIX apply(PIX pix, String steps) {
+      List<String[]> parsed = parse(steps);
+      PIX current = pixClone(pix);
+      for (String[] step : parsed) {
+         PIX next = step(current, step[0], step[1]);
+         pixDestroy(current);
+         if(next == null || next.isNull()) {
+            throw new IllegalStateException("Preprocessing step failed: " + step[0]);
+         }
+         current = next;
+      }
+      return current;
+   }
+
+   /**
+    * Runs a single step.
+    *
+    * @param pix image to preprocess, left untouched.
+    * @param name name of the step.
+    * @param arg argument of the step, or null for its default.
+    * @return a new image, or null if Leptonica failed.
+    */
+   private static PIX step(PIX pix, String name, String arg) {
+      if("gray".equals(name)) {
+         return pixConvertTo8(pix, 0);
+      }
+      if("otsu".equals(name) || "sauvola".equals(name)) {
+         PIX gray = pixGetDepth(pix) == 8 ? pixClone(pix) : pixConvertTo8(pix, 0);
+         PIX binary = new PIX((Pointer) null);
+         int error;
+         // Leptonica needs a half window of at least 2, and each dimension at least twice the half window plus 3.
+         int window = Math.min(arg == null ? 15 : (int) Float.parseFloat(arg),
+            (Math.min(pixGetWidth(gray), pixGetHeight(gray)) - 3) / 2);
+         if("otsu".equals(name) || window < 2) {
+            // A tile as large as any field gives a single global threshold.
+            error = pixOtsuAdaptiveThreshold(gray, 2000, 2000, 0, 0, 0.1f, (PIX) null, binary);
+         } else {
+            error = pixSauvolaBinarize(gray, window, 0.35f, 1, (PIX) null, (PIX) null, (PIX) null, binary);
+         }
+         pixDestroy(gray);
+         return error == 0 ? binary : null;
+      }
+      if("upscale".equals(name)) {
+         return upscale(pix, arg == null ? textHeight : (int) Float.parseFloat(arg));
+      }
+      if("deskew".equals(name)) {
+         return pixDeskew(pix, 0);
+      }
+      if("scale".equals(name)) {
+         float factor = Float.parseFloat(arg);
+         return pixScale(pix, factor, factor);
+      }
+      if(pixGetDepth(pix) == 1) {
+         int size = arg == null ? 3 : (int) Float.parseFloat(arg);
+         return pixSelectBySize(pix, size, size, 8, L_SELECT_IF_EITHER, L_SELECT_IF_GTE, (IntPointer) null);
+      }
+      return pixMedianFilter(pix, 1, 1);
+   }
+
+   /**
+    * Scales an image up so that its text is at least a given height, since Tesseract recognises small text poorly and
+    * slowly. Text height is estimated as the median height of the connected components of the binarised image,
+    * ignoring specks and components as wide as lines or borders. Images without measurable text, or whose text is
+    * already tall enough, are not scaled.
+    *
+    * @param pix image to scale, left untouched.
+    * @param target text height in pixels to scale up to.
+    * @return the scaled image, or a clone of the original if it was not scaled, which the caller must destroy.
+    */
+   public static PIX upscale(PIX pix, int target) {
+      int height = estimateTextHeight(pix);
+      if(height <= 0 || height >= target) {
+         return pixClone(pix);
+      }
+      float factor = Math.min((float) target / height, maxUpscale);
+      log.fine("Scaling " + height + "px text by " + factor);
+      return pixScale(pix, factor, factor);
+   }
+
+   /**
+    * Estimates the height of the text in an image from its connected components.
+    *
+    * @param pix image containing text.
+    * @return median component height in pixels, or -1 if no text like components were found.
+    */
+   public static int estimateTextHeight(PIX pix) {
+      PIX binary = pixGetDepth(pix) == 1 ? pixClone(pix) : step(pix, "otsu", null);
+      if(binary == null || binary.isNull()) {
+         return -1;
+      }
+      int pixWidth = pixGetWidth(binary);
+      int pixHeight = pixGetHeight(binary);
+      BOXA boxes = pixConnCompBB(binary, 8);
+      pixDestroy(binary);
+      if(boxes == null || boxes.isNull()) {
+         return -1;
+      }
+      try {
+         int count = boxaGetCount(boxes);
+         int[] heights = new int[count];
+         int found = 0;
+         int[] x = new int[1], y = new int[1], w = new int[1], h = new int[1];
+         for (int i = 0; i < count; i++ ) {
+            boxaGetBoxGeometry(boxes, i, x, y, w, h);
+            if(h[0] >= 4 && h[0] < pixHeight && w[0] < pixWidth / 2) {
+               heights[found++ ] = h[0];
+            }
+         }
+         if(found == 0) {
+            return -1;
+         }
+         Arrays.sort(heights, 0, found);
+         return heights[found / 2];
+      } finally {
+         boxaDestroy(boxes);
+      }
+   }
+}
\ No newline at end of file
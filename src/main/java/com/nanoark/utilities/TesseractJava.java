@@ -1,18 +1,40 @@
 package com.nanoark.utilities;
 
+import static org.bytedeco.javacpp.lept.boxCreate;
+import static org.bytedeco.javacpp.lept.boxDestroy;
+import static org.bytedeco.javacpp.lept.pixClipRectangle;
+import static org.bytedeco.javacpp.lept.pixCopy;
 import static org.bytedeco.javacpp.lept.pixDestroy;
+import static org.bytedeco.javacpp.lept.pixGetHeight;
+import static org.bytedeco.javacpp.lept.pixGetWidth;
 import static org.bytedeco.javacpp.lept.pixRead;
+import static org.bytedeco.javacpp.tesseract.RIL_SYMBOL;
+import static org.bytedeco.javacpp.tesseract.RIL_WORD;
 
 import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.lept.BOX;
 import org.bytedeco.javacpp.lept.PIX;
+import org.bytedeco.javacpp.tesseract.ResultIterator;
 import org.bytedeco.javacpp.tesseract.TessBaseAPI;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import com.nanoark.utilities.Log;
 
 public class TesseractJava {
 	
    private static Logger       log = Log.logger();
+   /** Threads which drive pooled engines over the fields of an image, one per engine. */
+   private static final ExecutorService fieldWorkers = Executors.newFixedThreadPool(TesseractPool.size());
 	
    public static String ocrAndPrint(String location) {
       BytePointer outText;
@@ -67,4 +89,261 @@ public class TesseractJava {
       image.close();
       return result;
    }
+
+   /**
+    * Runs OCR on several fields of one image. The image is decoded once, through the {@link ImageCache}, and each
+    * pooled engine takes fields from a common queue and selects them with SetRectangle on its own copy of the page, so
+    * no cropped copy of the image is written for any field. Engines never set the shared image itself, since SetImage
+    * clones it and Leptonica's reference counts are not thread safe. Fields which are cancelled, whose recognition runs
+    * past its deadline, or whose recognition fails are left with an error instead of results. The image is only
+    * destroyed once every engine has finished with it.
+    *
+    * @param location URL of the image containing the fields.
+    * @param fields regions to recognise, the OCR value and confidence of each are filled in.
+    * @param run deadline and cancellation flags of this run.
+    * @return false if Tesseract could not be initialized or the image could not be read.
+    * @throws IOException
+    */
+   public static boolean ocrFields(String location, List<OCRField> fields, final OCRCancel run) throws IOException {
+      // Repeated jobs against one scan copy it from the cache rather than decoding it again.
+      final PIX image = ImageCache.get(location);
+      if(image == null) {
+         log.severe("Could not read image for OCR: " + location);
+         return false;
+      }
+      try {
+         final Queue<OCRField> pending = new ConcurrentLinkedQueue<OCRField>(fields);
+         int engines = Math.min(TesseractPool.size(), fields.size());
+         List<Future<Boolean>> workers = new ArrayList<Future<Boolean>>(engines);
+         for (int i = 0; i < engines; i++ ) {
+            workers.add(fieldWorkers.submit(new Callable<Boolean>() {
+               @Override
+               public Boolean call() throws Exception {
+                  return ocrFields(image, pending, run);
+               }
+            }));
+         }
+         // Wait for every engine, even after one fails, since the others are still reading the image.
+         boolean ok = true;
+         boolean interrupted = false;
+         for (Future<Boolean> worker : workers) {
+            while (true) {
+               try {
+                  ok &= worker.get();
+                  break;
+               } catch (InterruptedException e) {
+                  interrupted = true;
+               } catch (ExecutionException e) {
+                  log.severe(Log.getError(e));
+                  ok = false;
+                  break;
+               }
+            }
+         }
+         if(interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recognising " + location);
+         }
+         return ok;
+      } finally {
+         pixDestroy(image);
+         image.close();
+      }
+   }
+
+   /**
+    * Recognises fields from a shared queue using one pooled engine until the queue is empty.
+    *
+    * @param image decoded image containing the fields, only read by this method.
+    * @param pending fields still to be recognised.
+    * @param run deadline and cancellation flags of this run.
+    * @return false if no engine could be initialized.
+    * @throws InterruptedException if interrupted while waiting for an engine.
+    */
+   private static boolean ocrFields(PIX image, Queue<OCRField> pending, OCRCancel run) throws InterruptedException {
+      TessBaseAPI api;
+      try {
+         api = TesseractPool.borrow();
+      } catch (IllegalStateException e) {
+         return false;
+      }
+      // This engine's own copy of the page, made on its first plain field.
+      PIX page = null;
+      try {
+         boolean whole = false;
+         OCRField field;
+         while ((field = pending.poll()) != null) {
+            if(run.isCancelled(field.field)) {
+               field.error = OCRCancel.cancelled;
+               continue;
+            }
+            boolean plain = field.prep == null || field.prep.isEmpty();
+            PIX copy = null;
+            try {
+               // Preprocessing, such as upscaling small text, changes the field's geometry, so it runs on a copy of
+               // the field rather than the whole image. Plain fields are hashed and recognised in place.
+               copy = plain ? null : prep(image, field);
+               String key = plain ? OCRCache.key(image, field.x, field.y, field.width, field.height, field) : OCRCache
+                  .key(copy, field);
+               if(OCRCache.fill(key, field)) {
+                  continue;
+               }
+               if(plain) {
+                  if( !whole) {
+                     if(page == null) {
+                        page = pixCopy((PIX) null, image);
+                     }
+                     api.SetImage(page);
+                     whole = true;
+                  }
+                  api.SetRectangle(field.x, field.y, field.width, field.height);
+                  getResults(api, field, run, 0, 0, 1, 1);
+               } else {
+                  recognise(api, copy, field, run);
+                  whole = false;
+               }
+               if(field.error != null) {
+                  log.warning("OCR of field " + field.field + " " + field.error);
+                  continue;
+               }
+               if(field.confidence < field.lowThresh) {
+                  Escalation.escalate(api, image, field, run);
+                  whole = false;
+               }
+               OCRCache.put(key, field);
+            } catch (RuntimeException e) {
+               // One bad field must not cost the others their results, and the engine's image is no longer known.
+               log.warning("OCR of field " + field.field + " failed\n" + Log.getError(e));
+               field.error = e.toString();
+               whole = false;
+            } finally {
+               if(copy != null) {
+                  pixDestroy(copy);
+               }
+            }
+         }
+         return true;
+      } finally {
+         // Release clears the engine, dropping its clone of the page before the copy itself is destroyed.
+         TesseractPool.release(api);
+         if(page != null) {
+            pixDestroy(page);
+         }
+      }
+   }
+
+   /**
+    * Recognises a copy of a field, storing the results in the field with boxes mapped from the copy back onto the
+    * original image. Boxes can only be mapped back through scaling, so a field whose preprocessing deskews it, and so
+    * rotates the copy by an unknown angle, keeps its text and confidence but no words or symbols.
+    *
+    * @param api engine to recognise with.
+    * @param copy preprocessed copy of the field.
+    * @param field field the copy was taken from, which receives the results.
+    * @param run deadline and cancellation flags of the run the field belongs to.
+    */
+   static void recognise(TessBaseAPI api, PIX copy, OCRField field, OCRCancel run) {
+      api.SetImage(copy);
+      getResults(api, field, run, field.x, field.y, (float) field.width / pixGetWidth(copy), (float) field.height
+         / pixGetHeight(copy));
+      if(Preprocess.rotates(field.prep)) {
+         field.words = null;
+         field.symbols = null;
+      }
+   }
+
+   /**
+    * Recognises the engine's current image and stores the text, confidence, words and symbols in a field, or the reason
+    * recognition was aborted in its error.
+    *
+    * @param api engine with an image set.
+    * @param field receives the results.
+    * @param run deadline and cancellation flags of the run the field belongs to.
+    * @param offsetX added to horizontal coordinates after scaling.
+    * @param offsetY added to vertical coordinates after scaling.
+    * @param scaleX horizontal coordinates are multiplied by this.
+    * @param scaleY vertical coordinates are multiplied by this.
+    */
+   private static void getResults(TessBaseAPI api, OCRField field, OCRCancel run, int offsetX, int offsetY,
+      float scaleX, float scaleY) {
+      field.error = run.recognise(api, field.field);
+      if(field.error != null) {
+         return;
+      }
+      BytePointer outText = api.GetUTF8Text();
+      field.ocrVal = outText == null ? "" : outText.getString();
+      field.confidence = api.MeanTextConf();
+      if(outText != null) {
+         outText.deallocate();
+      }
+      field.words = getElements(api, RIL_WORD, offsetX, offsetY, scaleX, scaleY);
+      field.symbols = getElements(api, RIL_SYMBOL, offsetX, offsetY, scaleX, scaleY);
+   }
+
+   /**
+    * Reads the elements at one level from the last recognition, without recognising again.
+    *
+    * @param api engine which has just recognised a field.
+    * @param level RIL_WORD or RIL_SYMBOL.
+    * @param offsetX added to horizontal coordinates after scaling.
+    * @param offsetY added to vertical coordinates after scaling.
+    * @param scaleX horizontal coordinates are multiplied by this.
+    * @param scaleY vertical coordinates are multiplied by this.
+    * @return the recognised elements in reading order.
+    */
+   private static OCRElements getElements(TessBaseAPI api, int level, int offsetX, int offsetY, float scaleX,
+      float scaleY) {
+      OCRElements elements = new OCRElements();
+      ResultIterator ri = api.GetIterator();
+      if(ri == null || ri.isNull()) {
+         return elements;
+      }
+      int[] left = new int[1], top = new int[1], right = new int[1], bottom = new int[1];
+      try {
+         do {
+            BytePointer text = ri.GetUTF8Text(level);
+            if(text == null || text.isNull()) {
+               continue;
+            }
+            ri.BoundingBox(level, left, top, right, bottom);
+            elements.add(text.getString(), Math.round(ri.Confidence(level)), offsetX + Math.round(left[0] * scaleX),
+               offsetY + Math.round(top[0] * scaleY), offsetX + Math.round(right[0] * scaleX),
+               offsetY + Math.round(bottom[0] * scaleY));
+            text.deallocate();
+         } while (ri.Next(level));
+      } finally {
+         ri.deallocate();
+      }
+      return elements;
+   }
+
+   /**
+    * Copies a field out of an image and runs its preprocessing steps on the copy.
+    *
+    * @param image decoded image containing the field, only read by this method.
+    * @param field field to copy, along with its preprocessing steps.
+    * @return the preprocessed field, which the caller must destroy.
+    */
+   private static PIX prep(PIX image, OCRField field) {
+      PIX crop = clip(image, field);
+      try {
+         return Preprocess.apply(crop, field.prep);
+      } finally {
+         pixDestroy(crop);
+      }
+   }
+
+   /**
+    * Copies a field out of an image.
+    *
+    * @param image decoded image containing the field, only read by this method.
+    * @param field field to copy.
+    * @return the copy, which the caller must destroy.
+    */
+   static PIX clip(PIX image, OCRField field) {
+      BOX box = boxCreate(field.x, field.y, field.width, field.height);
+      PIX crop = pixClipRectangle(image, box, (BOX) null);
+      boxDestroy(box);
+      return crop;
+   }
 }
\ No newline at end of file
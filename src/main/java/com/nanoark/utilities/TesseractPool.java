@@ -0,0 +1,73 @@
+package com.nanoark.utilities;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.bytedeco.javacpp.tesseract.TessBaseAPI;
+
+/**
+ * Bounded pool of initialized Tesseract engines, so that OCR jobs do not pay for Init on every field and the number
+ * of engines held in native memory never exceeds the configured size.
+ *
+ * @author Vino Sugunan
+ */
+public class TesseractPool {
+   private static Logger                           log      = Log.logger();
+   /** Maximum number of engines, one per core unless nanoweather.ocr.engines is set. */
+   private static final int                        size     = Integer.getInteger("nanoweather.ocr.engines",
+                                                               Runtime.getRuntime().availableProcessors());
+   /** Language every engine is initialized with. */
+   public static final String                      language = "ENG";
+   /** Engines which are initialized and not currently in use. */
+   private static final BlockingQueue<TessBaseAPI> idle     = new LinkedBlockingQueue<TessBaseAPI>();
+   /** Number of engines created so far. */
+   private static final AtomicInteger              created  = new AtomicInteger();
+
+   /**
+    * @return the maximum number of engines this pool will hold.
+    */
+   public static int size() {
+      return size;
+   }
+
+   /**
+    * Takes an engine from the pool, creating one if the pool has not reached its size, otherwise waiting for one to
+    * be released.
+    *
+    * @return an initialized engine which must be handed back through {@link #release(TessBaseAPI)}.
+    * @throws InterruptedException if interrupted while waiting for an engine.
+    * @throws IllegalStateException if a new engine could not be initialized.
+    */
+   public static TessBaseAPI borrow() throws InterruptedException {
+      TessBaseAPI api = idle.poll();
+      if(api != null) {
+         return api;
+      }
+      if(created.incrementAndGet() <= size) {
+         api = new TessBaseAPI();
+         if(api.Init(".", language) != 0) {
+            created.decrementAndGet();
+            api.End();
+            api.close();
+            log.severe("Could not initialize tesseract at location: " + System.getProperty("user.dir"));
+            throw new IllegalStateException("Could not initialize tesseract");
+         }
+         log.info("Created tesseract engine " + created.get() + " of " + size);
+         return api;
+      }
+      created.decrementAndGet();
+      return idle.take();
+   }
+
+   /**
+    * Hands an engine back to the pool once its results have been read.
+    *
+    * @param api engine previously taken with {@link #borrow()}.
+    */
+   public static void release(TessBaseAPI api) {
+      api.Clear();
+      idle.offer(api);
+   }
+}
@@ -233,4 +233,16 @@ public interface ITesseract {
      * @return list of <code>Word</code>
      */
     List<Word> getWords(BufferedImage bi, int pageIteratorLevel);
+
+    /**
+     * Recognizes an image and passes each element at specified page iterator
+     * level to a visitor, without allocating a <code>Word</code> per element.
+     * Pass a {@link Words} to collect the elements into parallel arrays.
+     *
+     * @param bi input image
+     * @param pageIteratorLevel TessPageIteratorLevel enum
+     * @param visitor receives each recognized element
+     * @throws TesseractException if recognition fails or the visitor throws
+     */
+    void visitWords(BufferedImage bi, int pageIteratorLevel, WordVisitor visitor) throws TesseractException;
 }
@@ -24,6 +24,7 @@ import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 
@@ -45,6 +46,8 @@ import net.sourceforge.tess4j.ITessAPI.TessResultIterator;
 import net.sourceforge.tess4j.ITessAPI.TessResultRenderer;
 import net.sourceforge.tess4j.util.ImageIOHelper;
 import net.sourceforge.tess4j.util.LoggHelper;
+import net.sourceforge.tess4j.util.PageIterator;
+import net.sourceforge.tess4j.util.PdfRenderer;
 import net.sourceforge.tess4j.util.PdfUtilities;
 
 /**
@@ -72,8 +75,14 @@ public class Tesseract implements ITesseract {
    private int                           ocrEngineMode  = TessOcrEngineMode.OEM_DEFAULT;
    private final Properties              prop           = new Properties();
    private final List<String>            configList     = new ArrayList<String>();
+   private PdfRenderer                   pdfRenderer;
+   private int                           pdfDpi         = 300;
    private TessAPI                       api;
    private TessBaseAPI                   handle;
+   private final IntBuffer               leftB          = IntBuffer.allocate(1);
+   private final IntBuffer               topB           = IntBuffer.allocate(1);
+   private final IntBuffer               rightB         = IntBuffer.allocate(1);
+   private final IntBuffer               bottomB        = IntBuffer.allocate(1);
    private static final org.slf4j.Logger logger         = LoggerFactory
       .getLogger(new LoggHelper().toString());
 
@@ -149,6 +158,19 @@ public class Tesseract implements ITesseract {
       this.psm = mode;
    }
 
+   /**
+    * Sets how PDF pages are rendered for OCR.
+    *
+    * @param pdfRenderer renderer used to render each page on demand, e.g.
+    *           from {@link PdfUtilities#getRenderer(String)}; <code>null</code>
+    *           renders all pages to temporary files with Ghostscript first
+    * @param dpi resolution pages are rendered at
+    */
+   public void setPdfRenderer(PdfRenderer pdfRenderer, int dpi) {
+      this.pdfRenderer = pdfRenderer;
+      this.pdfDpi = dpi;
+   }
+
    /**
     * Enables hocr output.
     *
@@ -210,11 +232,17 @@ public class Tesseract implements ITesseract {
     */
    @Override
    public String doOCR(File imageFile, Rectangle rect) throws TesseractException {
+      PageIterator pages = null;
       try {
-         return doOCR(ImageIOHelper.getIIOImageList(imageFile), imageFile.getPath(), rect);
+         pages = ImageIOHelper.getPageIterator(imageFile, pdfRenderer, pdfDpi);
+         return doOCR(pages, imageFile.getPath(), rect);
       } catch (Exception e) {
          logger.error(e.getMessage(), e);
          throw new TesseractException(e);
+      } finally {
+         if(pages != null) {
+            pages.close();
+         }
       }
    }
 
@@ -279,13 +307,32 @@ public class Tesseract implements ITesseract {
     */
    @Override
    public String doOCR(List<IIOImage> imageList, String filename, Rectangle rect)
+      throws TesseractException {
+      return doOCR(imageList.iterator(), filename, rect);
+   }
+
+   /**
+    * Performs OCR operation on pages as they are decoded, so that a page can be
+    * released as soon as it has been recognized.
+    *
+    * @param pages an iterator over <code>IIOImage</code> objects
+    * @param filename input file name. Needed only for training and reading a
+    *           UNLV zone file.
+    * @param rect the bounding rectangle defines the region of the image to be
+    *           recognized. A rectangle of zero dimension or <code>null</code> indicates
+    *           the whole image.
+    * @return the recognized text
+    * @throws TesseractException
+    */
+   protected String doOCR(Iterator<IIOImage> pages, String filename, Rectangle rect)
       throws TesseractException {
       init();
       setTessVariables();
       try {
          StringBuilder sb = new StringBuilder();
          int pageNum = 0;
-         for (IIOImage oimage : imageList) {
+         while (pages.hasNext()) {
+            IIOImage oimage = pages.next();
             pageNum++ ;
             try {
                setImage(oimage.getRenderedImage(), rect);
@@ -602,7 +649,8 @@ public class Tesseract implements ITesseract {
    }
 
    /**
-    * Gets recognized words at specified page iterator level.
+    * Gets recognized words at specified page iterator level. If recognition fails, the words recognized so far are
+    * returned and the failure is logged.
     *
     * @param bi input image
     * @param pageIteratorLevel TessPageIteratorLevel enum
@@ -610,37 +658,64 @@ public class Tesseract implements ITesseract {
     */
    @Override
    public List<Word> getWords(BufferedImage bi, int pageIteratorLevel) {
+      final List<Word> words = new ArrayList<Word>();
+      try {
+         visitWords(bi, pageIteratorLevel, new WordVisitor() {
+            @Override
+            public void visit(String text, float confidence, int left, int top, int right, int bottom) {
+               words.add(new Word(text, confidence, new Rectangle(left, top, right - left, bottom - top)));
+            }
+         });
+      } catch (TesseractException te) {
+         logger.error(te.getMessage(), te);
+      }
+      return words;
+   }
+
+   /**
+    * Recognizes an image and passes each element at specified page iterator level to a visitor. The bounding box
+    * buffers are allocated once per instance and reused for every element.
+    *
+    * @param bi input image
+    * @param pageIteratorLevel TessPageIteratorLevel enum
+    * @param visitor receives each recognized element
+    * @throws TesseractException if recognition fails or the visitor throws
+    */
+   @Override
+   public void visitWords(BufferedImage bi, int pageIteratorLevel, WordVisitor visitor) throws TesseractException {
       this.init();
       this.setTessVariables();
-      List<Word> words = new ArrayList<Word>();
+      TessResultIterator ri = null;
       try {
          setImage(bi, null);
-         api.TessBaseAPIRecognize(handle, null);
-         TessResultIterator ri = api.TessBaseAPIGetIterator(handle);
+         if(api.TessBaseAPIRecognize(handle, null) != 0) {
+            throw new TesseractException("Recognition failed");
+         }
+         ri = api.TessBaseAPIGetIterator(handle);
+         if(ri == null) {
+            return;
+         }
          TessPageIterator pi = api.TessResultIteratorGetPageIterator(ri);
          api.TessPageIteratorBegin(pi);
          do {
             Pointer ptr = api.TessResultIteratorGetUTF8Text(ri, pageIteratorLevel);
+            if(ptr == null) {
+               continue;
+            }
             String text = ptr.getString(0);
             api.TessDeleteText(ptr);
             float confidence = api.TessResultIteratorConfidence(ri, pageIteratorLevel);
-            IntBuffer leftB = IntBuffer.allocate(1);
-            IntBuffer topB = IntBuffer.allocate(1);
-            IntBuffer rightB = IntBuffer.allocate(1);
-            IntBuffer bottomB = IntBuffer.allocate(1);
             api.TessPageIteratorBoundingBox(pi, pageIteratorLevel, leftB, topB, rightB, bottomB);
-            int left = leftB.get();
-            int top = topB.get();
-            int right = rightB.get();
-            int bottom = bottomB.get();
-            Word word = new Word(text, confidence,
-               new Rectangle(left, top, right - left, bottom - top));
-            words.add(word);
+            visitor.visit(text, confidence, leftB.get(0), topB.get(0), rightB.get(0), bottomB.get(0));
          } while (api.TessPageIteratorNext(pi, pageIteratorLevel) == TRUE);
-         return words;
-      } catch (Exception e) {
-         return words;
+      } catch (IOException ioe) {
+         throw new TesseractException(ioe);
+      } catch (RuntimeException re) {
+         throw new TesseractException(re);
       } finally {
+         if(ri != null) {
+            api.TessResultIteratorDelete(ri);
+         }
          dispose();
       }
    }
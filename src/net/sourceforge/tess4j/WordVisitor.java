@@ -0,0 +1,35 @@
+/**
+ * Copyright @ 2015 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tess4j;
+
+/**
+ * Receives recognized elements one at a time, without a <code>Word</code> or
+ * <code>Rectangle</code> being allocated for each.
+ */
+public interface WordVisitor {
+
+    /**
+     * Called for each recognized element, in reading order.
+     *
+     * @param text recognized text of the element
+     * @param confidence confidence of the element, 0 to 100
+     * @param left left edge of the bounding box
+     * @param top top edge of the bounding box
+     * @param right right edge of the bounding box, exclusive
+     * @param bottom bottom edge of the bounding box, exclusive
+     */
+    void visit(String text, float confidence, int left, int top, int right, int bottom);
+}
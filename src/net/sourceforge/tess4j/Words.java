@@ -0,0 +1,157 @@
+/**
+ * Copyright @ 2015 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tess4j;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Recognized elements held in parallel arrays rather than as one
+ * <code>Word</code> per element. Boxes are stored as four consecutive
+ * integers: left, top, right and bottom. An instance can be cleared and reused
+ * for the next page without reallocating its arrays.
+ */
+public class Words implements WordVisitor {
+
+    private String[] text;
+    private float[] confidence;
+    private int[] boxes;
+    private int count;
+
+    /**
+     * Constructor.
+     */
+    public Words() {
+        this(64);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity number of elements expected
+     */
+    public Words(int capacity) {
+        capacity = Math.max(capacity, 1);
+        text = new String[capacity];
+        confidence = new float[capacity];
+        boxes = new int[4 * capacity];
+    }
+
+    @Override
+    public void visit(String text, float confidence, int left, int top, int right, int bottom) {
+        if (count == this.text.length) {
+            int capacity = 2 * count;
+            this.text = Arrays.copyOf(this.text, capacity);
+            this.confidence = Arrays.copyOf(this.confidence, capacity);
+            boxes = Arrays.copyOf(boxes, 4 * capacity);
+        }
+        this.text[count] = text;
+        this.confidence[count] = confidence;
+        int b = 4 * count;
+        boxes[b] = left;
+        boxes[b + 1] = top;
+        boxes[b + 2] = right;
+        boxes[b + 3] = bottom;
+        count++;
+    }
+
+    /**
+     * Removes all elements, keeping the arrays for reuse.
+     */
+    public void clear() {
+        Arrays.fill(text, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * @return the number of elements
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param i index of the element
+     * @return the text
+     */
+    public String getText(int i) {
+        checkIndex(i);
+        return text[i];
+    }
+
+    /**
+     * @param i index of the element
+     * @return the confidence
+     */
+    public float getConfidence(int i) {
+        checkIndex(i);
+        return confidence[i];
+    }
+
+    /**
+     * @param i index of the element
+     * @return the left edge of the bounding box
+     */
+    public int getLeft(int i) {
+        checkIndex(i);
+        return boxes[4 * i];
+    }
+
+    /**
+     * @param i index of the element
+     * @return the top edge of the bounding box
+     */
+    public int getTop(int i) {
+        checkIndex(i);
+        return boxes[4 * i + 1];
+    }
+
+    /**
+     * @param i index of the element
+     * @return the right edge of the bounding box, exclusive
+     */
+    public int getRight(int i) {
+        checkIndex(i);
+        return boxes[4 * i + 2];
+    }
+
+    /**
+     * @param i index of the element
+     * @return the bottom edge of the bounding box, exclusive
+     */
+    public int getBottom(int i) {
+        checkIndex(i);
+        return boxes[4 * i + 3];
+    }
+
+    /**
+     * Converts an element to a <code>Word</code>.
+     *
+     * @param i index of the element
+     * @return the element as a word
+     */
+    public Word getWord(int i) {
+        checkIndex(i);
+        int b = 4 * i;
+        return new Word(text[i], confidence[i], new Rectangle(boxes[b], boxes[b + 1], boxes[b + 2] - boxes[b], boxes[b + 3] - boxes[b + 1]));
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright @ 2009 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tess4j.util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders PDF pages with Ghostscript, one page per call, through a temporary
+ * PNG file. Uses the external executable when
+ * <code>tess4j.gs.executable</code> is set, otherwise <code>Ghost4J</code>.
+ */
+public class GhostscriptRenderer implements PdfRenderer {
+
+    @Override
+    public Document open(final File inputPdfFile) throws IOException {
+        final int pageCount = PdfUtilities.GS_EXECUTABLE != null
+                ? PdfUtilities.getPdfPageCountExternal(inputPdfFile) : PdfUtilities.getPdfPageCount(inputPdfFile);
+        return new Document() {
+
+            @Override
+            public int getPageCount() {
+                return pageCount;
+            }
+
+            @Override
+            public BufferedImage renderPage(int pageIndex, int dpi) throws IOException {
+                File[] pages = PdfUtilities.convertPdf2Png(inputPdfFile, pageIndex + 1, pageIndex + 1, dpi);
+                try {
+                    if (pages.length == 0) {
+                        throw new IOException("Ghostscript rendered no image for page " + (pageIndex + 1));
+                    }
+                    return ImageIO.read(pages[0]);
+                } finally {
+                    PdfUtilities.deleteWorkingFiles(pages);
+                }
+            }
+
+            @Override
+            public void close() {
+                // nothing held open
+            }
+        };
+    }
+}
@@ -23,6 +23,14 @@ import java.awt.Transparency;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.imageio.IIOImage;
 
 public class ImageHelper {
@@ -154,6 +162,293 @@ public class ImageHelper {
         return invertOp.filter(image, tmp);
     }
 
+    /**
+     * Threads running the row bands of the <code>parallel</code> kernels.
+     */
+    private static final ExecutorService bandWorkers = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "tess4j-kernel");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * A kernel applied to a contiguous range of pixels.
+     */
+    public interface Kernel {
+
+        /**
+         * Processes pixels <code>offset</code> to
+         * <code>offset + length - 1</code>.
+         *
+         * @param offset index of the first pixel
+         * @param length number of pixels
+         */
+        void apply(int offset, int length);
+    }
+
+    /**
+     * Converts packed RGB pixels, as held by <code>TYPE_INT_RGB</code> and
+     * <code>TYPE_INT_ARGB</code> rasters, to 8-bit luminance. Nothing is
+     * allocated, so the output buffer can be reused across images.
+     *
+     * @param rgb packed RGB pixels
+     * @param gray output gray levels, one byte per pixel
+     * @param offset index of the first pixel to convert
+     * @param length number of pixels to convert
+     */
+    public static void convertToGrayscale(int[] rgb, byte[] gray, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int p = rgb[i];
+            // ITU-R BT.601 weights in 8-bit fixed point
+            gray[i] = (byte) ((77 * ((p >> 16) & 0xff) + 150 * ((p >> 8) & 0xff) + 29 * (p & 0xff)) >> 8);
+        }
+    }
+
+    /**
+     * Thresholds 8-bit gray levels to black (0) and white (255), one byte per
+     * pixel so the result can still be read as a gray raster.
+     * <code>gray</code> and <code>binary</code> may be the same array.
+     *
+     * @param gray gray levels
+     * @param binary output levels, 0 or 255
+     * @param offset index of the first pixel to threshold
+     * @param length number of pixels to threshold
+     * @param threshold gray level at or above which a pixel is white
+     */
+    public static void binarize(byte[] gray, byte[] binary, int offset, int length, int threshold) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            binary[i] = (byte) (((gray[i] & 0xff) - threshold) >> 31 ^ 0xff);
+        }
+    }
+
+    /**
+     * Inverts 8-bit gray levels. <code>src</code> and <code>dst</code> may be
+     * the same array.
+     *
+     * @param src gray levels
+     * @param dst output gray levels
+     * @param offset index of the first pixel to invert
+     * @param length number of pixels to invert
+     */
+    public static void invert(byte[] src, byte[] dst, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            dst[i] = (byte) ~src[i];
+        }
+    }
+
+    /**
+     * Finds the global threshold which best separates foreground from
+     * background gray levels, using Otsu's method.
+     *
+     * @param gray gray levels
+     * @param offset index of the first pixel to consider
+     * @param length number of pixels to consider
+     * @return threshold to pass to
+     * {@link #binarize(byte[], byte[], int, int, int)}
+     */
+    public static int otsuThreshold(byte[] gray, int offset, int length) {
+        int[] histogram = new int[256];
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            histogram[gray[i] & 0xff]++;
+        }
+        long sum = 0;
+        for (int t = 0; t < 256; t++) {
+            sum += (long) t * histogram[t];
+        }
+        long sumBackground = 0;
+        int background = 0;
+        double bestVariance = -1;
+        int threshold = 0;
+        for (int t = 0; t < 256; t++) {
+            background += histogram[t];
+            if (background == 0) {
+                continue;
+            }
+            int foreground = length - background;
+            if (foreground == 0) {
+                break;
+            }
+            sumBackground += (long) t * histogram[t];
+            double meanBackground = (double) sumBackground / background;
+            double meanForeground = (double) (sum - sumBackground) / foreground;
+            double variance = (double) background * foreground * (meanBackground - meanForeground) * (meanBackground - meanForeground);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = t + 1;
+            }
+        }
+        return threshold;
+    }
+
+    /**
+     * Applies a kernel to an image in bands of whole rows, one band per
+     * processor. Small images are processed on the calling thread.
+     *
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @param kernel kernel to apply to each band
+     */
+    public static void parallel(int width, int height, final Kernel kernel) {
+        int bands = Math.min(Runtime.getRuntime().availableProcessors(), height);
+        if (bands <= 1 || (long) width * height < 1 << 20) {
+            kernel.apply(0, width * height);
+            return;
+        }
+        int rows = (height + bands - 1) / bands;
+        List<Future<?>> futures = new ArrayList<Future<?>>(bands);
+        for (int y = 0; y < height; y += rows) {
+            final int offset = y * width;
+            final int length = Math.min(rows, height - y) * width;
+            futures.add(bandWorkers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    kernel.apply(offset, length);
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        } catch (ExecutionException ee) {
+            throw new RuntimeException(ee.getCause());
+        }
+    }
+
+    /**
+     * Estimates the skew of text lines with a projection profile search. Dark
+     * pixels (gray level below 128) are sampled on a grid reduced by
+     * <code>reduction</code> in each direction and projected along each
+     * candidate angle; the angle whose row profile has the sharpest peaks
+     * and valleys is taken as the skew. A coarse search in steps of
+     * <code>step</code> degrees is refined to a quarter of a step.
+     *
+     * @param gray gray levels or binary levels, one byte per pixel
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @param maxAngle largest skew considered, in degrees either way
+     * @param step coarse search step in degrees
+     * @param reduction sampling interval in pixels, 1 for every pixel
+     * @return the skew in degrees, positive if lines slope down to the right
+     */
+    public static double estimateSkew(byte[] gray, int width, int height, double maxAngle, double step, int reduction) {
+        int margin = (int) Math.ceil(width * Math.tan(Math.toRadians(maxAngle))) / reduction + 1;
+        int[] profile = new int[height / reduction + 2 * margin + 1];
+        double best = 0;
+        long bestScore = -1;
+        for (double angle = -maxAngle; angle <= maxAngle + 1e-9; angle += step) {
+            long score = profileScore(gray, width, height, angle, reduction, margin, profile);
+            if (score > bestScore) {
+                bestScore = score;
+                best = angle;
+            }
+        }
+        double coarse = best;
+        for (double angle = coarse - step; angle <= coarse + step + 1e-9; angle += step / 4) {
+            if (Math.abs(angle) > maxAngle) {
+                continue;
+            }
+            long score = profileScore(gray, width, height, angle, reduction, margin, profile);
+            if (score > bestScore) {
+                bestScore = score;
+                best = angle;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Scores one candidate skew by the sum of squared differences between
+     * adjacent rows of its projection profile.
+     */
+    private static long profileScore(byte[] gray, int width, int height, double angle, int reduction, int margin, int[] profile) {
+        Arrays.fill(profile, 0);
+        // row offset per sampled column, in 16.16 fixed point
+        int slope = (int) Math.round(Math.tan(Math.toRadians(angle)) * 65536);
+        for (int y = 0; y < height; y += reduction) {
+            int row = y * width;
+            int shift = 0;
+            for (int x = 0; x < width; x += reduction, shift += slope) {
+                if ((gray[row + x] & 0xff) < 128) {
+                    profile[(y - (shift >> 16) * reduction) / reduction + margin]++;
+                }
+            }
+        }
+        long score = 0;
+        for (int i = 1; i < profile.length; i++) {
+            long d = profile[i] - profile[i - 1];
+            score += d * d;
+        }
+        return score;
+    }
+
+    /**
+     * Rotates an image about its centre with nearest neighbour sampling in
+     * fixed point arithmetic, so that lines with the given skew become level.
+     * The output has the same size as the input; corners rotated in from
+     * outside the image are filled with <code>background</code>.
+     *
+     * @param src gray levels, one byte per pixel
+     * @param dst output gray levels, must not be <code>src</code>
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @param angle skew in degrees, as returned by
+     * {@link #estimateSkew(byte[], int, int, double, double, int)}
+     * @param background gray level of uncovered pixels
+     */
+    public static void rotate(byte[] src, byte[] dst, int width, int height, double angle, byte background) {
+        double theta = Math.toRadians(angle);
+        int cos = (int) Math.round(Math.cos(theta) * 65536);
+        int sin = (int) Math.round(Math.sin(theta) * 65536);
+        double cx = (width - 1) / 2.0;
+        double cy = (height - 1) / 2.0;
+        for (int y = 0; y < height; y++) {
+            double dy = y - cy;
+            // source coordinates of the first pixel in this row, in 16.16 fixed point, rounded to nearest
+            int sx = (int) Math.round((cx - Math.cos(theta) * cx - Math.sin(theta) * dy) * 65536) + 32768;
+            int sy = (int) Math.round((cy - Math.sin(theta) * cx + Math.cos(theta) * dy) * 65536) + 32768;
+            int row = y * width;
+            for (int x = 0; x < width; x++, sx += cos, sy += sin) {
+                int px = sx >> 16;
+                int py = sy >> 16;
+                dst[row + x] = px >= 0 && px < width && py >= 0 && py < height ? src[py * width + px] : background;
+            }
+        }
+    }
+
+    /**
+     * Straightens an image by estimating its skew on a grid sampled every
+     * fourth pixel, within 5 degrees either way, and rotating it into
+     * <code>dst</code> with a white background. Skews under a tenth of a
+     * degree are not corrected and <code>src</code> is copied unchanged.
+     *
+     * @param src gray levels, one byte per pixel
+     * @param dst output gray levels, must not be <code>src</code>
+     * @param width image width in pixels
+     * @param height image height in pixels
+     * @return the skew corrected, in degrees
+     */
+    public static double deskew(byte[] src, byte[] dst, int width, int height) {
+        double angle = estimateSkew(src, width, height, 5, 0.5, 4);
+        if (Math.abs(angle) < 0.1) {
+            System.arraycopy(src, 0, dst, 0, width * height);
+            return 0;
+        }
+        rotate(src, dst, width, height, angle, (byte) 0xff);
+        return angle;
+    }
+
     /**
      * Rotates an image.
      *
@@ -317,20 +317,7 @@ public class ImageIOHelper {
 
             List<IIOImage> iioImageList = new ArrayList<IIOImage>();
 
-            String imageFileName = imageFile.getName();
-            String imageFormat = imageFileName.substring(imageFileName.lastIndexOf('.') + 1);
-            if (imageFormat.matches("(pbm|pgm|ppm)")) {
-                imageFormat = "pnm";
-            } else if (imageFormat.matches("(jp2|j2k|jpf|jpx|jpm)")) {
-                imageFormat = "jpeg2000";
-            }
-            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(imageFormat);
-
-            if (!readers.hasNext()) {
-                throw new RuntimeException(JAI_IMAGE_READER_MESSAGE);
-            }
-
-            reader = readers.next();
+            reader = getImageReader(imageFile);
             iis = ImageIO.createImageInputStream(imageFile);
             reader.setInput(iis);
 
@@ -360,6 +347,60 @@ public class ImageIOHelper {
         }
     }
 
+    /**
+     * Gets an image reader for the format of an image file, based on its
+     * extension.
+     *
+     * @param imageFile input image file
+     * @return an image reader with no input set
+     */
+    static ImageReader getImageReader(File imageFile) {
+        String imageFileName = imageFile.getName();
+        String imageFormat = imageFileName.substring(imageFileName.lastIndexOf('.') + 1);
+        if (imageFormat.matches("(pbm|pgm|ppm)")) {
+            imageFormat = "pnm";
+        } else if (imageFormat.matches("(jp2|j2k|jpf|jpx|jpm)")) {
+            imageFormat = "jpeg2000";
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(imageFormat);
+
+        if (!readers.hasNext()) {
+            throw new RuntimeException(JAI_IMAGE_READER_MESSAGE);
+        }
+
+        return readers.next();
+    }
+
+    /**
+     * Gets an iterator which decodes the pages of an image file one at a
+     * time, so that a document of any length can be processed without holding
+     * more than one decoded page in memory.
+     *
+     * @param imageFile input image file. It can be any of the supported
+     * formats, including multi-page TIFF, and PDF if GPL Ghostscript is
+     * installed
+     * @return an iterator over the pages, which must be closed once done
+     * @throws IOException
+     */
+    public static PageIterator getPageIterator(File imageFile) throws IOException {
+        return new PageIterator(imageFile);
+    }
+
+    /**
+     * Gets an iterator which decodes the pages of an image file one at a
+     * time, rendering PDF pages on demand with the given renderer.
+     *
+     * @param imageFile input image file
+     * @param pdfRenderer renderer for PDF pages, or <code>null</code> for
+     * Ghostscript temporary files
+     * @param dpi resolution PDF pages are rendered at
+     * @return an iterator over the pages, which must be closed once done
+     * @throws IOException
+     */
+    public static PageIterator getPageIterator(File imageFile, PdfRenderer pdfRenderer, int dpi) throws IOException {
+        return new PageIterator(imageFile, pdfRenderer, dpi);
+    }
+
     /**
      * Gets a list of <code>IIOImage</code> objects for a
      * <code>BufferedImage</code>.
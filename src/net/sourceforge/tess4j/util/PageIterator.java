@@ -0,0 +1,161 @@
+/**
+ * Copyright @ 2008 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tess4j.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes the pages of an image file one at a time. Unlike
+ * {@link ImageIOHelper#getIIOImageList(File)}, only the page most recently
+ * returned is held in memory, so heap use does not grow with the number of
+ * pages. PDF pages are either rendered on demand by a {@link PdfRenderer}, or
+ * rendered to temporary PNG files first, which are read and deleted one at a
+ * time.
+ */
+public class PageIterator implements Iterator<IIOImage>, Closeable {
+
+    private final File[] pdfPages;
+    private final PdfRenderer.Document pdfDocument;
+    private final int dpi;
+    private final ImageReader reader;
+    private final ImageInputStream iis;
+    private final int pageTotal;
+    private int index;
+
+    /**
+     * Opens an image file for page by page decoding.
+     *
+     * @param imageFile input image file
+     * @throws IOException
+     */
+    public PageIterator(File imageFile) throws IOException {
+        this(imageFile, null, 300);
+    }
+
+    /**
+     * Opens an image file for page by page decoding, rendering each PDF page
+     * only when it is reached.
+     *
+     * @param imageFile input image file
+     * @param pdfRenderer renderer for PDF pages; <code>null</code> to render
+     * every page to temporary files up front with Ghostscript
+     * @param dpi resolution PDF pages are rendered at
+     * @throws IOException
+     */
+    public PageIterator(File imageFile, PdfRenderer pdfRenderer, int dpi) throws IOException {
+        this.dpi = dpi;
+        boolean pdf = imageFile.getName().toLowerCase().endsWith(".pdf");
+        if (pdf && pdfRenderer != null) {
+            pdfPages = null;
+            pdfDocument = pdfRenderer.open(imageFile);
+            reader = null;
+            iis = null;
+            pageTotal = pdfDocument.getPageCount();
+        } else if (pdf) {
+            pdfPages = PdfUtilities.convertPdf2Png(imageFile);
+            pdfDocument = null;
+            reader = null;
+            iis = null;
+            pageTotal = pdfPages.length;
+        } else {
+            pdfPages = null;
+            pdfDocument = null;
+            reader = ImageIOHelper.getImageReader(imageFile);
+            iis = ImageIO.createImageInputStream(imageFile);
+            reader.setInput(iis);
+            pageTotal = reader.getNumImages(true);
+        }
+    }
+
+    /**
+     * @return the number of pages in the image file
+     */
+    public int getPageCount() {
+        return pageTotal;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < pageTotal;
+    }
+
+    /**
+     * Decodes the next page.
+     *
+     * @return the next page
+     * @throws RuntimeException wrapping the <code>IOException</code> if the
+     * page could not be decoded
+     */
+    @Override
+    public IIOImage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            if (pdfDocument != null) {
+                return new IIOImage(pdfDocument.renderPage(index, dpi), null, null);
+            }
+            if (pdfPages != null) {
+                File page = pdfPages[index];
+                try {
+                    return new IIOImage(ImageIO.read(page), null, null);
+                } finally {
+                    page.delete();
+                }
+            }
+            return reader.readAll(index, reader.getDefaultReadParam());
+        } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+        } finally {
+            index++;
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Releases the reader or PDF document and deletes any rendered pages not
+     * yet read.
+     */
+    @Override
+    public void close() {
+        try {
+            if (iis != null) {
+                iis.close();
+            }
+            if (reader != null) {
+                reader.dispose();
+            }
+            if (pdfDocument != null) {
+                pdfDocument.close();
+            }
+        } catch (Exception e) {
+            // ignore
+        }
+        PdfUtilities.deleteWorkingFiles(pdfPages);
+    }
+}
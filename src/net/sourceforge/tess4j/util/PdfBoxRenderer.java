@@ -0,0 +1,55 @@
+/**
+ * Copyright @ 2009 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tess4j.util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+/**
+ * Renders PDF pages in the JVM with <code>Apache PDFBox</code>, straight to
+ * grayscale images. No native Ghostscript install or temporary files are
+ * needed.
+ */
+public class PdfBoxRenderer implements PdfRenderer {
+
+    @Override
+    public Document open(File inputPdfFile) throws IOException {
+        final PDDocument document = PDDocument.load(inputPdfFile);
+        final PDFRenderer renderer = new PDFRenderer(document);
+        return new Document() {
+
+            @Override
+            public int getPageCount() {
+                return document.getNumberOfPages();
+            }
+
+            @Override
+            public BufferedImage renderPage(int pageIndex, int dpi) throws IOException {
+                return renderer.renderImageWithDPI(pageIndex, dpi, ImageType.GRAY);
+            }
+
+            @Override
+            public void close() throws IOException {
+                document.close();
+            }
+        };
+    }
+}
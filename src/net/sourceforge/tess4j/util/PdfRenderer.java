@@ -0,0 +1,57 @@
+/**
+ * Copyright @ 2009 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tess4j.util;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Renders the pages of PDF documents to images, one page at a time.
+ */
+public interface PdfRenderer {
+
+    /**
+     * Opens a PDF document for rendering.
+     *
+     * @param inputPdfFile input file
+     * @return the open document, which must be closed once done
+     * @throws IOException
+     */
+    Document open(File inputPdfFile) throws IOException;
+
+    /**
+     * A PDF document open for rendering.
+     */
+    interface Document extends Closeable {
+
+        /**
+         * @return number of pages
+         */
+        int getPageCount();
+
+        /**
+         * Renders one page.
+         *
+         * @param pageIndex zero-based page index
+         * @param dpi resolution to render at
+         * @return the rendered page
+         * @throws IOException
+         */
+        BufferedImage renderPage(int pageIndex, int dpi) throws IOException;
+    }
+}
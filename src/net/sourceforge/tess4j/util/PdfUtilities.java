@@ -17,6 +17,11 @@ package net.sourceforge.tess4j.util;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.ghost4j.*;
 import org.slf4j.LoggerFactory;
@@ -25,6 +30,22 @@ public class PdfUtilities {
 
     public static final String GS_INSTALL = "\nPlease download, install GPL Ghostscript from http://sourceforge.net/projects/ghostscript/files\nand/or set the appropriate environment variable.";
 
+    /**
+     * Ghostscript executable for external rendering, set with the
+     * <code>tess4j.gs.executable</code> property. If unset, PDFs are rendered
+     * through the shared <code>Ghost4J</code> instance one at a time.
+     */
+    public static final String GS_EXECUTABLE = System.getProperty("tess4j.gs.executable");
+
+    /**
+     * Maximum number of external Ghostscript processes run at once.
+     */
+    public static final int GS_THREADS = Integer.getInteger("tess4j.gs.threads", Runtime.getRuntime().availableProcessors());
+
+    private static final String WORKING_DIR_PREFIX = "tess4j-pdf";
+
+    private static final ExecutorService gsRenderers = Executors.newFixedThreadPool(GS_THREADS);
+
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(new LoggHelper().toString());
 
     /**
@@ -49,12 +70,8 @@ public class PdfUtilities {
         } catch (NoClassDefFoundError ncdfe) {
             throw new RuntimeException(getMessage(ncdfe.getMessage()));
         } finally {
-            if (pngFiles != null) {
-                // delete temporary PNG images
-                for (File tempFile : pngFiles) {
-                    tempFile.delete();
-                }
-            }
+            // delete temporary PNG images
+            deleteWorkingFiles(pngFiles);
         }
     }
 
@@ -65,31 +82,110 @@ public class PdfUtilities {
      * @return an array of PNG images
      */
     public static File[] convertPdf2Png(File inputPdfFile) {
-        File imageDir = inputPdfFile.getParentFile();
-
-        if (imageDir == null) {
-            String userDir = System.getProperty("user.dir");
-            imageDir = new File(userDir);
+        if (GS_EXECUTABLE != null) {
+            try {
+                return convertPdf2PngParallel(inputPdfFile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
 
-        //get Ghostscript instance
-        Ghostscript gs = Ghostscript.getInstance();
+        return convertPdf2Png(inputPdfFile, 0, 0, 300);
+    }
+
+    /**
+     * Converts a range of PDF pages to PNG format.
+     *
+     * @param inputPdfFile input file
+     * @param firstPage begin page, 0 for the first page
+     * @param lastPage end page, 0 for the last page
+     * @param dpi resolution to render at
+     * @return an array of PNG images, within a working directory removed by
+     * {@link #deleteWorkingFiles(File[])}, or an empty array, with the working
+     * directory already removed, if no pages were rendered
+     */
+    public static File[] convertPdf2Png(File inputPdfFile, int firstPage, int lastPage, int dpi) {
+        File imageDir;
+        try {
+            imageDir = createWorkingDir();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
 
         //prepare Ghostscript interpreter parameters
         //refer to Ghostscript documentation for parameter usage
         List<String> gsArgs = new ArrayList<String>();
-        gsArgs.add("-gs");
+        gsArgs.add(GS_EXECUTABLE != null ? GS_EXECUTABLE : "-gs");
         gsArgs.add("-dNOPAUSE");
         gsArgs.add("-dQUIET");
         gsArgs.add("-dBATCH");
         gsArgs.add("-dSAFER");
         gsArgs.add("-sDEVICE=pnggray");
-        gsArgs.add("-r300");
+        gsArgs.add("-r" + dpi);
         gsArgs.add("-dGraphicsAlphaBits=4");
         gsArgs.add("-dTextAlphaBits=4");
+        if (firstPage > 0) {
+            gsArgs.add("-dFirstPage=" + firstPage);
+        }
+        if (lastPage > 0) {
+            gsArgs.add("-dLastPage=" + lastPage);
+        }
         gsArgs.add("-sOutputFile=" + imageDir.getPath() + "/workingimage%03d.png");
         gsArgs.add(inputPdfFile.getPath());
 
+        try {
+            if (GS_EXECUTABLE != null) {
+                // external process, no need for the shared instance's lock
+                runGhostscript(gsArgs);
+            } else {
+                runGhost4J(gsArgs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            deleteWorkingDir(imageDir);
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            deleteWorkingDir(imageDir);
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            deleteWorkingDir(imageDir);
+            throw e;
+        }
+
+        // find working files
+        File[] workingFiles = imageDir.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.toLowerCase().matches("workingimage\\d{3}\\.png$");
+            }
+        });
+
+        // a failed Ghost4J run is only logged, and leaves no pages behind
+        if (workingFiles == null || workingFiles.length == 0) {
+            deleteWorkingDir(imageDir);
+            return new File[0];
+        }
+
+        Arrays.sort(workingFiles, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return f1.getName().compareTo(f2.getName());
+            }
+        });
+
+        return workingFiles;
+    }
+
+    /**
+     * Runs the shared <code>Ghost4J</code> interpreter, one caller at a time.
+     *
+     * @param gsArgs interpreter parameters
+     */
+    private static void runGhost4J(List<String> gsArgs) {
+        //get Ghostscript instance
+        Ghostscript gs = Ghostscript.getInstance();
+
         //execute and exit interpreter
         try {
             synchronized (gs) {
@@ -106,24 +202,218 @@ public class PdfUtilities {
                 //nothing
             }
         }
+    }
 
-        // find working files
-        File[] workingFiles = imageDir.listFiles(new FilenameFilter() {
+    /**
+     * Converts PDF to PNG format by running several external Ghostscript
+     * processes at once, each rendering its own range of pages into a
+     * directory of its own. Unlike {@link #convertPdf2Png(File)}, no global
+     * lock is held, so concurrent jobs neither wait for nor overwrite each
+     * other.
+     *
+     * @param inputPdfFile input file
+     * @return an array of PNG images, one per page in page order, within a
+     * working directory removed by {@link #deleteWorkingFiles(File[])}
+     * @throws IOException
+     */
+    public static File[] convertPdf2PngParallel(final File inputPdfFile) throws IOException {
+        final File imageDir = createWorkingDir();
+        File[] workingFiles = null;
+        try {
+            int pageCount = getPdfPageCountExternal(inputPdfFile);
+            int ranges = Math.max(1, Math.min(GS_THREADS, pageCount));
+            int rangeSize = (pageCount + ranges - 1) / ranges;
+
+            List<Future<Integer>> renders = new ArrayList<Future<Integer>>();
+            for (int first = 1; first <= pageCount; first += rangeSize) {
+                final int firstPage = first;
+                final int lastPage = Math.min(first + rangeSize - 1, pageCount);
+                renders.add(gsRenderers.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() throws Exception {
+                        List<String> gsArgs = new ArrayList<String>();
+                        gsArgs.add(GS_EXECUTABLE);
+                        gsArgs.add("-dNOPAUSE");
+                        gsArgs.add("-dQUIET");
+                        gsArgs.add("-dBATCH");
+                        gsArgs.add("-dSAFER");
+                        gsArgs.add("-sDEVICE=pnggray");
+                        gsArgs.add("-r300");
+                        gsArgs.add("-dGraphicsAlphaBits=4");
+                        gsArgs.add("-dTextAlphaBits=4");
+                        gsArgs.add("-dFirstPage=" + firstPage);
+                        gsArgs.add("-dLastPage=" + lastPage);
+                        // zero padded start page keeps ranges in page order when sorted by name
+                        gsArgs.add(String.format("-sOutputFile=%s/workingimage%06d-%%04d.png", imageDir.getPath(), firstPage));
+                        gsArgs.add(inputPdfFile.getPath());
+                        return runGhostscript(gsArgs);
+                    }
+                }));
+            }
 
-            @Override
-            public boolean accept(File dir, String name) {
-                return name.toLowerCase().matches("workingimage\\d{3}\\.png$");
+            // wait for every range, so none is still writing when a failure removes the working directory
+            IOException failure = null;
+            for (Future<Integer> render : renders) {
+                try {
+                    render.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new IOException(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
             }
-        });
 
-        Arrays.sort(workingFiles, new Comparator<File>() {
-            @Override
-            public int compare(File f1, File f2) {
-                return f1.getName().compareTo(f2.getName());
+            File[] pages = imageDir.listFiles(new FilenameFilter() {
+
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.toLowerCase().matches("workingimage\\d{6}-\\d{4}\\.png$");
+                }
+            });
+
+            Arrays.sort(pages, new Comparator<File>() {
+                @Override
+                public int compare(File f1, File f2) {
+                    return f1.getName().compareTo(f2.getName());
+                }
+            });
+
+            workingFiles = pages;
+            return workingFiles;
+        } finally {
+            // deleteWorkingFiles cannot find the directory once no pages are returned
+            if (workingFiles == null || workingFiles.length == 0) {
+                deleteWorkingDir(imageDir);
             }
-        });
+        }
+    }
 
-        return workingFiles;
+    /**
+     * Gets PDF Page Count using an external Ghostscript process, without
+     * taking the lock on the shared Ghostscript instance.
+     *
+     * @param inputPdfFile input file
+     * @return number of pages
+     * @throws IOException
+     */
+    public static int getPdfPageCountExternal(File inputPdfFile) throws IOException {
+        List<String> gsArgs = new ArrayList<String>();
+        gsArgs.add(GS_EXECUTABLE);
+        gsArgs.add("-dNOPAUSE");
+        gsArgs.add("-dQUIET");
+        gsArgs.add("-dBATCH");
+        gsArgs.add("-sPDFname=" + inputPdfFile.getPath());
+        gsArgs.add(pdfPageCountFilePath);
+
+        ProcessBuilder pb = new ProcessBuilder(gsArgs);
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+        String output = readFully(process.getInputStream());
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("Ghostscript failed counting pages: " + output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        try {
+            return Integer.parseInt(output.replace("%%Pages: ", "").trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected Ghostscript page count: " + output);
+        }
+    }
+
+    /**
+     * Runs an external Ghostscript process to completion.
+     *
+     * @param gsArgs command line, starting with the Ghostscript executable
+     * @return exit code, always 0
+     * @throws IOException if the process could not be run or failed
+     * @throws InterruptedException
+     */
+    private static int runGhostscript(List<String> gsArgs) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(gsArgs);
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+        String output = readFully(process.getInputStream());
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("Ghostscript exited with " + exitCode + ": " + output);
+        }
+        return exitCode;
+    }
+
+    private static String readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int read;
+            while ((read = is.read(buf)) != -1) {
+                os.write(buf, 0, read);
+            }
+            return os.toString();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Creates a working directory for the pages of one PDF, so that concurrent
+     * conversions never share output files.
+     *
+     * @return a new, empty directory
+     * @throws IOException
+     */
+    private static File createWorkingDir() throws IOException {
+        File imageDir = File.createTempFile(WORKING_DIR_PREFIX, "");
+        if (!imageDir.delete() || !imageDir.mkdir()) {
+            throw new IOException("Could not create working directory " + imageDir);
+        }
+        return imageDir;
+    }
+
+    /**
+     * Deletes a working directory along with anything left within it.
+     *
+     * @param imageDir working directory
+     */
+    private static void deleteWorkingDir(File imageDir) {
+        File[] leftovers = imageDir.listFiles();
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                leftover.delete();
+            }
+        }
+        imageDir.delete();
+    }
+
+    /**
+     * Deletes page images produced by a conversion, along with their working
+     * directory once it is empty.
+     *
+     * @param workingFiles page images
+     */
+    public static void deleteWorkingFiles(File[] workingFiles) {
+        if (workingFiles == null) {
+            return;
+        }
+        for (File tempFile : workingFiles) {
+            tempFile.delete();
+        }
+        if (workingFiles.length > 0) {
+            File imageDir = workingFiles[0].getParentFile();
+            if (imageDir != null && imageDir.getName().startsWith(WORKING_DIR_PREFIX)) {
+                imageDir.delete();
+            }
+        }
     }
 
     /**
@@ -322,6 +612,26 @@ public class PdfUtilities {
         }
     }
 
+    /**
+     * Gets a PDF renderer by name.
+     *
+     * @param name <code>pdfbox</code> to render in the JVM with PDFBox, or
+     * <code>ghostscript</code>; <code>null</code> for the renderer named by
+     * the <code>tess4j.pdf.renderer</code> property, Ghostscript by default
+     * @return the renderer
+     */
+    public static PdfRenderer getRenderer(String name) {
+        if (name == null) {
+            name = System.getProperty("tess4j.pdf.renderer", "ghostscript");
+        }
+        if (name.equalsIgnoreCase("pdfbox")) {
+            return new PdfBoxRenderer();
+        } else if (name.equalsIgnoreCase("ghostscript")) {
+            return new GhostscriptRenderer();
+        }
+        throw new IllegalArgumentException("Unknown PDF renderer: " + name);
+    }
+
     static String getMessage(String message) {
         if (message.contains("library 'gs") || message.contains("ghost4j")) {
             return message + GS_INSTALL;